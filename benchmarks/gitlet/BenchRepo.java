@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** A repository in a temporary directory on which benchmarks run Gitlet
+ *  commands.  Commands run in the benchmark's own process, as in a Shell,
+ *  so that they measure Gitlet's work rather than JVM startup, and their
+ *  output is discarded.  Nothing is synced to disk. */
+class BenchRepo {
+
+    /** Output stream that discards everything. */
+    static final PrintStream NULL_OUT =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /** A new, initialized repository in a temporary directory. */
+    BenchRepo() throws IOException {
+        this(Files.createTempDirectory("gitlet-bench").toFile());
+    }
+
+    /** A new, initialized repository in the existing directory DIR. */
+    BenchRepo(File dir) throws IOException {
+        _dir = dir;
+        System.setProperty("user.dir", _dir.getPath());
+        Transaction.setMode(Transaction.Mode.NONE);
+        _shell = new Shell(_dir);
+        run("init");
+    }
+
+    /** Return the working directory. */
+    File dir() {
+        return _dir;
+    }
+
+    /** Run the command ARGS. */
+    void run(String... args) throws IOException {
+        _shell.execute(Arrays.asList(args), NULL_OUT);
+    }
+
+    /** Write CONTENTS to the working file NAME, creating its directory if
+     *  needed. */
+    void write(String name, byte[] contents) {
+        File file = Utils.join(_dir, name);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, contents);
+    }
+
+    /** Stage every file in NAMES and commit them with MESSAGE.  Files are
+     *  staged in one command, rather than one add each, so that large
+     *  repositories can be built quickly. */
+    void commitAll(Collection<String> names, String message)
+        throws IOException {
+        Repository repo = Repository.load(_dir);
+        for (String name : names) {
+            repo.add(name);
+        }
+        Main.run(repo, _dir, new String[] { "commit", message });
+    }
+
+    /** Return the names of COUNT files, either all in the working
+     *  directory (if NESTED is false) or spread over two levels of ten
+     *  directories each. */
+    static List<String> names(int count, boolean nested) {
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < count; k += 1) {
+            String name = "f" + k + ".txt";
+            result.add(nested
+                       ? "d" + k % 10 + "/e" + k / 10 % 10 + "/" + name
+                       : name);
+        }
+        return result;
+    }
+
+    /** Return SIZE bytes of text lines, generated by RANDOM. */
+    static byte[] text(Random random, int size) {
+        StringBuilder result = new StringBuilder(size);
+        while (result.length() < size) {
+            result.append("line ").append(random.nextInt(1 << 20))
+                .append(' ').append(Long.toHexString(random.nextLong()))
+                .append('\n');
+        }
+        result.setLength(size);
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Delete the repository and its working directory. */
+    void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(_dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+
+    /** The working directory. */
+    private final File _dir;
+    /** The shell running commands. */
+    private final Shell _shell;
+}
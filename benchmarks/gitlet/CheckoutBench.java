@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Checking out between two branches that differ in some of their
+ *  files, for several repository sizes, numbers of differing files and
+ *  file sizes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckoutBench {
+
+    /** Number of files tracked by both branches. */
+    @Param({ "1000", "10000" })
+    public int files;
+
+    /** Number of files that differ between the branches. */
+    @Param({ "10", "1000" })
+    public int changed;
+
+    /** Size of each file in bytes. */
+    @Param({ "1000", "100000" })
+    public int fileSize;
+
+    /** Build the two branches and check out the first. */
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(files);
+        _repo = new BenchRepo();
+        List<String> names = BenchRepo.names(files, true);
+        for (String name : names) {
+            _repo.write(name, BenchRepo.text(random, fileSize));
+        }
+        _repo.commitAll(names, "files");
+        _repo.run("branch", "other");
+        _repo.run("checkout", "other");
+        List<String> edited = names.subList(0, Math.min(changed, files));
+        for (String name : edited) {
+            _repo.write(name, BenchRepo.text(random, fileSize));
+        }
+        _repo.commitAll(edited, "changes");
+        _repo.run("checkout", "master");
+    }
+
+    /** Remove the repository. */
+    @TearDown
+    public void tearDown() throws IOException {
+        _repo.delete();
+    }
+
+    /** Check out the other branch and then master again, so that each
+     *  operation writes twice the number of differing files. */
+    @Benchmark
+    public void checkoutBothWays() throws IOException {
+        _repo.run("checkout", "other");
+        _repo.run("checkout", "master");
+    }
+
+    /** The repository. */
+    private BenchRepo _repo;
+}
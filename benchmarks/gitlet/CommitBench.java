@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Construction of a Commit, which builds its tree from its parent's and
+ *  the staged changes, for repositories of several sizes and layouts. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitBench {
+
+    /** Number of files tracked by the parent commit. */
+    @Param({ "100", "10000" })
+    public int files;
+
+    /** Number of files staged for the new commit. */
+    @Param({ "1", "100" })
+    public int staged;
+
+    /** True if files are spread over nested directories rather than all
+     *  in the working directory. */
+    @Param({ "false", "true" })
+    public boolean nested;
+
+    /** Build the parent commit and store new versions of the files to be
+     *  staged. */
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(files);
+        _repo = new BenchRepo();
+        List<String> names = BenchRepo.names(files, nested);
+        for (String name : names) {
+            _repo.write(name, BenchRepo.text(random, 200));
+        }
+        _repo.commitAll(names, "parent");
+        _repository = Repository.load(_repo.dir());
+        _changes = new HashMap<>();
+        for (String name : names.subList(0, Math.min(staged, files))) {
+            _repo.write(name, BenchRepo.text(random, 200));
+            _repository.add(name);
+        }
+        _changes.putAll(_repository.getAddStage().getStagedNameToSha());
+        _parentSha = _repository.lastCommitSha();
+        _parent = _repository.getCommitFromSha(_parentSha);
+    }
+
+    /** Stage the changes again, since making a commit clears them. */
+    @Setup(Level.Invocation)
+    public void stage() {
+        for (Map.Entry<String, String> e : _changes.entrySet()) {
+            _repository.getAddStage().addToMap(e.getKey(), e.getValue());
+        }
+    }
+
+    /** Remove the repository. */
+    @TearDown
+    public void tearDown() throws IOException {
+        _repo.delete();
+    }
+
+    /** Make a commit of the staged files. */
+    @Benchmark
+    public Commit commit() throws IOException {
+        return new Commit("child", _parentSha, _parent, null, null,
+                          _repository);
+    }
+
+    /** The repository. */
+    private BenchRepo _repo;
+    /** The repository as loaded in memory. */
+    private Repository _repository;
+    /** Blob ids of the staged files, by name. */
+    private Map<String, String> _changes;
+    /** Id of the parent commit. */
+    private String _parentSha;
+    /** The parent commit. */
+    private Commit _parent;
+}
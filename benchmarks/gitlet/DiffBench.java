@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Line matching by each diff algorithm on files of several lengths and
+ *  kinds of edit. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBench {
+
+    /** Number of lines in the original file. */
+    @Param({ "100", "1000", "10000" })
+    public int lines;
+
+    /** How the file is edited: "append" adds lines at the end, "scattered"
+     *  changes one line in fifty throughout, "moved" moves a tenth of the
+     *  file elsewhere, "repetitive" edits a file made of few distinct
+     *  lines, and "rewrite" replaces every line. */
+    @Param({ "append", "scattered", "moved", "repetitive", "rewrite" })
+    public String edit;
+
+    /** The diff algorithm. */
+    @Param({ "myers", "patience", "histogram" })
+    public String algorithm;
+
+    /** Create the two versions of the file. */
+    @Setup
+    public void setup() {
+        Random random = new Random(lines);
+        _algorithm = DiffEngine.Algorithm.named(algorithm);
+        _before = new ArrayList<>();
+        for (int k = 0; k < lines; k += 1) {
+            _before.add(edit.equals("repetitive")
+                        ? "    }" + k % 4 : "line " + k + " " + random.nextInt());
+        }
+        _after = new ArrayList<>(_before);
+        switch (edit) {
+        case "append":
+            for (int k = 0; k < lines / 10; k += 1) {
+                _after.add("appended " + k);
+            }
+            break;
+        case "scattered":
+        case "repetitive":
+            for (int k = 0; k < lines; k += 50) {
+                _after.set(k, "changed " + k);
+            }
+            break;
+        case "moved":
+            List<String> block = new ArrayList<>(_after.subList(0, lines / 10));
+            _after.subList(0, lines / 10).clear();
+            _after.addAll(_after.size() / 2, block);
+            break;
+        case "rewrite":
+            Collections.shuffle(_after, random);
+            for (int k = 0; k < lines; k += 1) {
+                _after.set(k, "new " + _after.get(k));
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown edit " + edit);
+        }
+    }
+
+    /** Match the lines of the two versions. */
+    @Benchmark
+    public int[] diffs() {
+        Diff diff = new Diff();
+        diff.setAlgorithm(_algorithm);
+        diff.setSequences(_before, _after);
+        return diff.diffs();
+    }
+
+    /** The algorithm. */
+    private DiffEngine.Algorithm _algorithm;
+    /** The original lines. */
+    private List<String> _before;
+    /** The edited lines. */
+    private List<String> _after;
+}
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/** Generates a synthetic repository for scaling benchmarks.
+ *
+ *      java gitlet.Generate DIR [OPTION ...]
+ *
+ *  creates a repository in the new directory DIR.  Its OPTIONs are
+ *
+ *      --commits=N    make about N commits in all (default 100)
+ *      --files=N      track N files (default 100)
+ *      --branches=N   spread the commits over N branches, counting
+ *                     master (default 1)
+ *      --merges=P     make each commit a merge of another branch with
+ *                     probability P (default 0.1)
+ *      --changes=N    change between 1 and N files in each other commit
+ *                     (default 3)
+ *      --sizes=DIST   draw the size in bytes of each version of a file
+ *                     from DIST, which is fixed:N, uniform:MIN:MAX or
+ *                     lognormal:MEDIAN:SIGMA (default lognormal:2000:1.5)
+ *      --seed=N       seed the random choices (default 1)
+ *
+ *  Files are spread over two levels of ten directories.  Each branch
+ *  mostly changes its own share of the files, so merges seldom conflict.
+ *  Commands run in this process, as in a Shell, and nothing is synced to
+ *  disk.  DIR is left with master checked out.
+ */
+public class Generate {
+
+    /** Generate the repository described by ARGS. */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            usage();
+        }
+        File dir = new File(args[0]).getAbsoluteFile();
+        int commits = 100, files = 100, branches = 1, changes = 3;
+        double merges = 0.1;
+        long seed = 1;
+        String sizes = "lognormal:2000:1.5";
+        for (int k = 1; k < args.length; k += 1) {
+            String arg = args[k];
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            try {
+                switch (name) {
+                case "--commits":
+                    commits = Integer.parseInt(value);
+                    break;
+                case "--files":
+                    files = Integer.parseInt(value);
+                    break;
+                case "--branches":
+                    branches = Integer.parseInt(value);
+                    break;
+                case "--merges":
+                    merges = Double.parseDouble(value);
+                    break;
+                case "--changes":
+                    changes = Integer.parseInt(value);
+                    break;
+                case "--sizes":
+                    sizes = value;
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    usage();
+                }
+            } catch (NumberFormatException excp) {
+                usage();
+            }
+        }
+        if (commits < 1 || files < 1 || branches < 1 || changes < 1
+            || !dir.mkdirs()) {
+            usage();
+        }
+        long start = System.nanoTime();
+        Generate generator = new Generate(dir, files, branches, changes,
+                                          merges, sizes, seed);
+        generator.run(commits);
+        System.out.printf("Generated %d commits of %d files on %d branches "
+                          + "in %s (%.1f s)%n", generator._made, files,
+                          branches, dir, (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Print usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: java gitlet.Generate DIR [--commits=N] "
+                           + "[--files=N] [--branches=N] [--merges=P] "
+                           + "[--changes=N] [--sizes=DIST] [--seed=N]");
+        System.exit(1);
+    }
+
+    /** A generator of a repository in DIR with FILES files, BRANCHES
+     *  branches, up to CHANGES files changed per commit, a probability
+     *  MERGES of merging, file sizes drawn from the distribution SIZES
+     *  and random choices seeded by SEED. */
+    private Generate(File dir, int files, int branches, int changes,
+                     double merges, String sizes, long seed)
+        throws IOException {
+        _repo = new BenchRepo(dir);
+        _random = new Random(seed);
+        _names = BenchRepo.names(files, true);
+        _changes = changes;
+        _merges = merges;
+        _branches = new ArrayList<>();
+        _branches.add("master");
+        for (int b = 1; b < branches; b += 1) {
+            _branches.add("branch" + b);
+        }
+        String[] dist = sizes.split(":");
+        try {
+            _sizeKind = dist[0];
+            _sizeA = Double.parseDouble(dist[1]);
+            _sizeB = dist.length > 2 ? Double.parseDouble(dist[2]) : 0;
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            usage();
+        }
+        if (!List.of("fixed", "uniform", "lognormal").contains(_sizeKind)) {
+            usage();
+        }
+    }
+
+    /** Make about COMMITS commits. */
+    private void run(int commits) throws IOException {
+        for (String name : _names) {
+            _repo.write(name, BenchRepo.text(_random, size()));
+        }
+        _repo.commitAll(_names, "Add all files");
+        _made = 2;
+        for (String branch : _branches.subList(1, _branches.size())) {
+            _repo.run("branch", branch);
+        }
+        int current = 0;
+        while (_made < commits) {
+            if (_branches.size() > 1 && _random.nextInt(4) == 0) {
+                int next = _random.nextInt(_branches.size());
+                if (next != current) {
+                    _repo.run("checkout", _branches.get(next));
+                    current = next;
+                }
+            }
+            if (_branches.size() > 1 && _random.nextDouble() < _merges) {
+                int other = _random.nextInt(_branches.size() - 1);
+                if (other >= current) {
+                    other += 1;
+                }
+                _repo.run("merge", _branches.get(other));
+            } else {
+                TreeSet<String> changed = new TreeSet<>();
+                for (int n = 1 + _random.nextInt(_changes); n > 0; n -= 1) {
+                    changed.add(_names.get(pick(current)));
+                }
+                for (String name : changed) {
+                    _repo.write(name, BenchRepo.text(_random, size()));
+                }
+                _repo.commitAll(changed, "Change " + changed.first()
+                                + " on " + _branches.get(current));
+            }
+            _made += 1;
+        }
+        if (current != 0) {
+            _repo.run("checkout", "master");
+        }
+    }
+
+    /** Return the index of a file to change on branch number BRANCH,
+     *  mostly from that branch's share of the files. */
+    private int pick(int branch) {
+        int share = _names.size() / _branches.size();
+        if (share == 0 || _random.nextInt(10) == 0) {
+            return _random.nextInt(_names.size());
+        }
+        return branch * share + _random.nextInt(share);
+    }
+
+    /** Return a file size drawn from the size distribution. */
+    private int size() {
+        double size;
+        switch (_sizeKind) {
+        case "fixed":
+            size = _sizeA;
+            break;
+        case "uniform":
+            size = _sizeA + _random.nextDouble() * (_sizeB - _sizeA);
+            break;
+        default:
+            size = _sizeA * Math.exp(_sizeB * _random.nextGaussian());
+            break;
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, size));
+    }
+
+    /** The repository. */
+    private final BenchRepo _repo;
+    /** Source of random choices. */
+    private final Random _random;
+    /** Names of the files. */
+    private final List<String> _names;
+    /** Names of the branches, master first. */
+    private final List<String> _branches;
+    /** Most files changed by a commit. */
+    private final int _changes;
+    /** Probability of a merge. */
+    private final double _merges;
+    /** Kind of size distribution. */
+    private String _sizeKind;
+    /** Parameters of the size distribution. */
+    private double _sizeA, _sizeB;
+    /** Number of commits made. */
+    private int _made;
+}
@@ -0,0 +1,76 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Hashing of blobs, from memory and from files small enough to be read
+ *  into a buffer and large enough to be mapped. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBench {
+
+    /** Size of the hashed contents in bytes. */
+    @Param({ "64", "65536", "4194304", "67108864" })
+    public int size;
+
+    /** Create the contents and the file holding them. */
+    @Setup
+    public void setup() throws IOException {
+        _contents = new byte[size];
+        new Random(size).nextBytes(_contents);
+        _file = Files.createTempFile("gitlet-bench", ".bin").toFile();
+        Utils.writeContents(_file, _contents);
+    }
+
+    /** Remove the file. */
+    @TearDown
+    public void tearDown() {
+        _file.delete();
+    }
+
+    /** Hash contents held in memory. */
+    @Benchmark
+    public String sha1Bytes() {
+        return Utils.sha1(_contents, NAME);
+    }
+
+    /** Hash a file by streaming or mapping it. */
+    @Benchmark
+    public String sha1File() {
+        return Utils.sha1(_file, NAME);
+    }
+
+    /** Hash a working file as add and status do. */
+    @Benchmark
+    public String getShafromFile() {
+        return Repository.getShafromFile(_file, NAME);
+    }
+
+    /** Name hashed with the contents, as for a blob. */
+    private static final String NAME = "dir/file.txt";
+
+    /** The contents. */
+    private byte[] _contents;
+    /** A file holding them. */
+    private File _file;
+}
@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Finding the split point of two branches, as merge does, and testing
+ *  ancestry, on synthetic commit graphs of several sizes and shapes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitBench {
+
+    /** Number of commits in the graph. */
+    @Param({ "1000", "100000" })
+    public int commits;
+
+    /** Shape of the graph: "fork" is two branches that split at the
+     *  initial commit, "topics" is a main line into which short topic
+     *  branches are merged, with the two tips a few commits past the last
+     *  merge, and "crisscross" is two long-lived branches that merge into
+     *  each other in turn. */
+    @Param({ "fork", "topics", "crisscross" })
+    public String shape;
+
+    /** Build the graph. */
+    @Setup
+    public void setup() throws IOException {
+        Transaction.setMode(Transaction.Mode.NONE);
+        _file = Files.createTempFile("gitlet-bench", ".graph").toFile();
+        _file.delete();
+        _graph = new CommitGraph(_file);
+        String root = add(null, null);
+        switch (shape) {
+        case "fork":
+            _tip1 = _tip2 = root;
+            for (int k = 1; k < commits; k += 2) {
+                _tip1 = add(_tip1, null);
+                _tip2 = add(_tip2, null);
+            }
+            break;
+        case "topics":
+            String main = root;
+            while (_count < commits - TOPIC - 2 * TIP) {
+                String topic = main;
+                for (int k = 0; k < TOPIC; k += 1) {
+                    topic = add(topic, null);
+                }
+                main = add(add(main, null), topic);
+            }
+            _tip1 = _tip2 = main;
+            for (int k = 0; k < TIP; k += 1) {
+                _tip1 = add(_tip1, null);
+                _tip2 = add(_tip2, null);
+            }
+            break;
+        case "crisscross":
+            _tip1 = _tip2 = root;
+            boolean first = true;
+            while (_count < commits - 1) {
+                String a = add(_tip1, null);
+                String b = add(_tip2, null);
+                if (first) {
+                    _tip1 = add(a, b);
+                    _tip2 = b;
+                } else {
+                    _tip2 = add(b, a);
+                    _tip1 = a;
+                }
+                first = !first;
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown shape " + shape);
+        }
+    }
+
+    /** Remove the graph's file. */
+    @TearDown
+    public void tearDown() {
+        _file.delete();
+    }
+
+    /** Find the split point of the two tips. */
+    @Benchmark
+    public String mergeBase() {
+        return _graph.mergeBase(_tip1, _tip2);
+    }
+
+    /** Test whether one tip is an ancestor of the other, as merge does
+     *  before looking for a split point. */
+    @Benchmark
+    public boolean isAncestor() {
+        return _graph.isAncestor(_tip1, _tip2);
+    }
+
+    /** Add a commit with parents P1 and P2 (either may be null) to the
+     *  graph and return its id. */
+    private String add(String p1, String p2) {
+        String sha = Utils.sha1(Integer.toString(_count));
+        _graph.append(sha, p1, p2, _count * 1000L);
+        _count += 1;
+        return sha;
+    }
+
+    /** Number of commits on each topic branch. */
+    private static final int TOPIC = 8;
+    /** Number of commits on each tip past the last merge. */
+    private static final int TIP = 5;
+
+    /** File holding the graph. */
+    private File _file;
+    /** The graph. */
+    private CommitGraph _graph;
+    /** Number of commits added so far. */
+    private int _count;
+    /** Tips of the two branches. */
+    private String _tip1, _tip2;
+}
@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The status command on working directories of several sizes, either
+ *  unchanged since the last command or with some files touched or
+ *  modified. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusBench {
+
+    /** Number of tracked files. */
+    @Param({ "100", "1000", "10000" })
+    public int files;
+
+    /** State of the working directory before each status: "clean" is
+     *  unchanged, "touched" has a tenth of the files rewritten with the
+     *  same contents, so that they must be hashed again, and "modified"
+     *  has a tenth of them changed. */
+    @Param({ "clean", "touched", "modified" })
+    public String state;
+
+    /** Build the repository. */
+    @Setup
+    public void setup() throws IOException {
+        _random = new Random(files);
+        _repo = new BenchRepo();
+        _names = BenchRepo.names(files, true);
+        for (String name : _names) {
+            _repo.write(name, BenchRepo.text(_random, 1000));
+        }
+        _repo.commitAll(_names, "files");
+        _repo.run("status");
+    }
+
+    /** Touch or modify files, as STATE requires. */
+    @Setup(Level.Invocation)
+    public void change() {
+        if (state.equals("clean")) {
+            return;
+        }
+        for (int k = 0; k < files; k += 10) {
+            File file = Utils.join(_repo.dir(), _names.get(k));
+            byte[] contents = state.equals("touched")
+                ? Utils.readContents(file) : BenchRepo.text(_random, 1000);
+            _repo.write(_names.get(k), contents);
+            file.setLastModified(file.lastModified() + 1000);
+        }
+    }
+
+    /** Remove the repository. */
+    @TearDown
+    public void tearDown() throws IOException {
+        _repo.delete();
+    }
+
+    /** Run status. */
+    @Benchmark
+    public void status() throws IOException {
+        _repo.run("status");
+    }
+
+    /** The repository. */
+    private BenchRepo _repo;
+    /** The tracked files. */
+    private List<String> _names;
+    /** Source of new contents. */
+    private Random _random;
+}
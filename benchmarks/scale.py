@@ -0,0 +1,182 @@
+import sys, json, csv, time
+from subprocess import run, DEVNULL, CalledProcessError
+from os.path import abspath, join
+from getopt import getopt, GetoptError
+from os import pathsep
+from shutil import copytree, rmtree
+from statistics import median
+from tempfile import mkdtemp
+
+SHORT_USAGE = """\
+Usage: python3 scale.py OPTIONS
+
+   OPTIONS may include
+       --vary=DIM        Dimension to scale: commits, files, branches,
+                         merges or sizes (default commits).
+       --values=V,...    Values of that dimension (default 100,1000,10000).
+       --commits=N       Base number of commits (default 1000).
+       --files=N         Base number of files (default 1000).
+       --branches=N      Base number of branches (default 4).
+       --merges=P        Base probability of a merge (default 0.1).
+       --sizes=DIST      Base file size distribution, as for
+                         gitlet.Generate (default lognormal:2000:1.5).
+       --commands=C,...  Commands to time (default
+                         status,log,global-log,diff,checkout,merge).
+       --reps=R          Time each command R times (default 5).
+       --csv=FILE        Write every sample to FILE (default scale.csv).
+       --json=FILE       Write latency curves to FILE (default scale.json).
+       --progdir=DIR     Directory containing the gitlet package
+                         (default ..).
+       --benchdir=DIR    Directory containing the compiled benchmarks
+                         (default classes).
+       --keep            Keep the generated repositories.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+For each value of the varied dimension, generates a repository with
+gitlet.Generate, holding the other dimensions at their base values, and
+times each command as a separate run of gitlet.Main, so that the times
+include starting the JVM and reading the repository, as users see them.
+
+   status, log, global-log and diff (of the working directory against the
+       current branch) leave the repository unchanged.
+   checkout switches to branch1 and back to master, timing each switch.
+   merge merges branch1 into master in a fresh copy of the repository.
+
+checkout and merge need at least two branches.  Each sample is one row of
+the CSV file; the JSON file holds, for each command, the minimum, median
+and maximum time at each value.
+"""
+
+COMMANDS = ["status", "log", "global-log", "diff", "checkout", "merge"]
+
+def usage(full=False):
+    print(USAGE if full else SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def gitlet(progdir, repo, *args):
+    """Run gitlet in REPO with ARGS, returning the elapsed seconds."""
+    start = time.perf_counter()
+    run(["java", "-cp", progdir, "gitlet.Main"] + list(args), cwd=repo,
+        stdout=DEVNULL, check=True)
+    return time.perf_counter() - start
+
+def samples(command, progdir, repo, branches, reps):
+    """Return REPS times of COMMAND in REPO, which has BRANCHES branches,
+    or None if it cannot be timed there."""
+    if command in ("checkout", "merge") and branches < 2:
+        return None
+    result = []
+    for _ in range(reps):
+        if command == "checkout":
+            result.append(gitlet(progdir, repo, "checkout", "branch1"))
+            result.append(gitlet(progdir, repo, "checkout", "master"))
+        elif command == "merge":
+            scratch = mkdtemp(prefix="gitlet-merge")
+            copy = join(scratch, "repo")
+            copytree(repo, copy)
+            try:
+                result.append(gitlet(progdir, copy, "merge", "branch1"))
+            finally:
+                rmtree(scratch)
+        else:
+            result.append(gitlet(progdir, repo, command))
+    return result
+
+def main():
+    try:
+        opts, args = getopt(sys.argv[1:], '',
+                            ['vary=', 'values=', 'commits=', 'files=',
+                             'branches=', 'merges=', 'sizes=', 'commands=',
+                             'reps=', 'csv=', 'json=', 'progdir=',
+                             'benchdir=', 'keep', 'help'])
+    except GetoptError:
+        usage()
+    if args:
+        usage()
+
+    vary = 'commits'
+    values = ['100', '1000', '10000']
+    base = { 'commits': '1000', 'files': '1000', 'branches': '4',
+             'merges': '0.1', 'sizes': 'lognormal:2000:1.5' }
+    commands = COMMANDS
+    reps = 5
+    csv_file, json_file = 'scale.csv', 'scale.json'
+    progdir, benchdir = '..', 'classes'
+    keep = False
+    for opt, val in opts:
+        if opt == '--help':
+            usage(True)
+        elif opt == '--vary':
+            if val not in base:
+                usage()
+            vary = val
+        elif opt == '--values':
+            values = val.split(',')
+        elif opt[2:] in base:
+            base[opt[2:]] = val
+        elif opt == '--commands':
+            commands = val.split(',')
+            if not set(commands) <= set(COMMANDS):
+                usage()
+        elif opt == '--reps':
+            reps = int(val)
+        elif opt == '--csv':
+            csv_file = val
+        elif opt == '--json':
+            json_file = val
+        elif opt == '--progdir':
+            progdir = val
+        elif opt == '--benchdir':
+            benchdir = val
+        elif opt == '--keep':
+            keep = True
+    progdir = abspath(progdir)
+    classpath = abspath(benchdir) + pathsep + progdir
+
+    curves = { command: [] for command in commands }
+    with open(csv_file, 'w', newline='') as out:
+        writer = csv.writer(out)
+        writer.writerow(['vary', 'value'] + list(base)
+                        + ['command', 'rep', 'seconds'])
+        for value in values:
+            config = dict(base)
+            config[vary] = value
+            scratch = mkdtemp(prefix="gitlet-scale")
+            repo = join(scratch, "repo")
+            try:
+                run(["java", "-cp", classpath, "gitlet.Generate", repo]
+                    + ["--%s=%s" % item for item in config.items()],
+                    check=True)
+                for command in commands:
+                    times = samples(command, progdir, repo,
+                                    int(config['branches']), reps)
+                    if times is None:
+                        print("%s=%s: %s skipped" % (vary, value, command))
+                        continue
+                    for rep, seconds in enumerate(times):
+                        writer.writerow([vary, value] + list(config.values())
+                                        + [command, rep, "%.6f" % seconds])
+                    curves[command].append(
+                        { 'value': value, 'min': min(times),
+                          'median': median(times), 'max': max(times),
+                          'samples': times })
+                    print("%s=%s: %-10s median %.3f s"
+                          % (vary, value, command, median(times)))
+                    out.flush()
+            except CalledProcessError as excp:
+                print("%s=%s: failed: %s" % (vary, value, excp),
+                      file=sys.stderr)
+            finally:
+                if keep:
+                    print("%s=%s: kept %s" % (vary, value, repo))
+                else:
+                    rmtree(scratch)
+
+    with open(json_file, 'w') as out:
+        json.dump({ 'vary': vary, 'base': base, 'reps': reps,
+                    'curves': curves }, out, indent=2)
+
+if __name__ == "__main__":
+    main()
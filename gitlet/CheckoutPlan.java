@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/** The changes to the working directory needed to check out one commit
+ *  when another is checked out: the files to write because the working
+ *  copy does not already hold the target version, and the files to
+ *  delete because only the current commit tracks them.
+ *
+ *  The two manifests are compared tree by tree, so directories that are
+ *  the same in both commits are not read.  Every file of the target is
+ *  still checked against the working directory, since checkout replaces
+ *  local modifications, but files whose size, modification time and
+ *  inode show them to be unchanged since they were last written or
+ *  hashed are recognized from the stat cache without being read.
+ */
+class CheckoutPlan {
+
+    /** A plan for replacing the files of commit FROM in the working
+     *  directory WORKDIR, whose stat cache is CACHE, with those of commit
+     *  TO. */
+    CheckoutPlan(Commit from, Commit to, File workDir, StatCache cache) {
+        _to = to;
+        _workDir = workDir;
+        _cache = cache;
+        TreeMap<String, String[]> changes = from.changesTo(to);
+
+        List<String> added = new ArrayList<>();
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            String[] shas = e.getValue();
+            if (shas[1] == null) {
+                _deletes.add(e.getKey());
+            } else if (shas[0] == null
+                       && Utils.join(workDir, e.getKey()).isFile()) {
+                added.add(e.getKey());
+            }
+        }
+        Map<String, String> addedShas = cache.shas(added);
+        for (String fileName : added) {
+            if (!addedShas.get(fileName).equals(changes.get(fileName)[1])) {
+                _untracked.add(fileName);
+            }
+        }
+
+        List<String> unknown = new ArrayList<>();
+        Map<String, String> target = to.getNameToSha();
+        for (Map.Entry<String, String> e : new TreeMap<>(target).entrySet()) {
+            String fileName = e.getKey();
+            if (e.getValue().equals(cache.cachedSha(fileName))) {
+                continue;
+            }
+            if (Utils.join(workDir, fileName).isFile()) {
+                unknown.add(fileName);
+            } else {
+                _writes.add(fileName);
+            }
+        }
+        Map<String, String> unknownShas = cache.shas(unknown);
+        for (String fileName : unknown) {
+            if (!unknownShas.get(fileName).equals(target.get(fileName))) {
+                _writes.add(fileName);
+            }
+        }
+        Collections.sort(_writes);
+    }
+
+    /** Return the untracked working files that checking out would
+     *  overwrite with different contents. */
+    List<String> untrackedInTheWay() {
+        return _untracked;
+    }
+
+    /** Return the files that checking out writes. */
+    List<String> writes() {
+        return _writes;
+    }
+
+    /** Return the files that checking out deletes. */
+    List<String> deletes() {
+        return _deletes;
+    }
+
+    /** Write and then delete the files of this plan.  Files are written
+     *  concurrently by a pool of writer threads; since writing is bound by
+     *  I/O rather than CPU, there are twice as many as the hashing threads
+     *  of StatCache.  The only files deleted before writing are those
+     *  that stand where a written file or its directory goes, as when a
+     *  path is a file in one commit and a directory in the other.  If any
+     *  file cannot be written, exits with a message listing every such
+     *  file, without deleting anything else. */
+    void apply() {
+        TreeSet<String> writes = new TreeSet<>(_writes);
+        List<String> later = new ArrayList<>();
+        for (String fileName : _deletes) {
+            if (blocks(fileName, writes)) {
+                Utils.restrictedDelete(_workDir, fileName);
+            } else {
+                later.add(fileName);
+            }
+        }
+        TreeSet<File> dirs = new TreeSet<>();
+        for (String fileName : _writes) {
+            dirs.add(Utils.join(_workDir, fileName).getParentFile());
+        }
+        for (File dir : dirs) {
+            dir.mkdirs();
+        }
+        List<String> failures = Collections.synchronizedList(
+            new ArrayList<>());
+        int threads = Math.min(_writes.size(), 2 * StatCache.parallelism());
+        if (threads < 2) {
+            for (String fileName : _writes) {
+                write(fileName, failures);
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                for (String fileName : _writes) {
+                    pool.execute(() -> write(fileName, failures));
+                }
+            } finally {
+                pool.shutdown();
+            }
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        if (!failures.isEmpty()) {
+            Collections.sort(failures);
+            Main.exitWithMessage("Could not check out:\n  "
+                                 + String.join("\n  ", failures));
+        }
+        for (String fileName : later) {
+            Utils.restrictedDelete(_workDir, fileName);
+        }
+    }
+
+    /** Return true iff the file FILENAME must be deleted before WRITES,
+     *  a set of paths, can be written: it lies where the directory of one
+     *  of them goes, or within one of them. */
+    private static boolean blocks(String fileName, TreeSet<String> writes) {
+        if (!writes.subSet(fileName + '/', fileName + (char) ('/' + 1))
+                .isEmpty()) {
+            return true;
+        }
+        for (int i = fileName.indexOf('/'); i >= 0;
+             i = fileName.indexOf('/', i + 1)) {
+            if (writes.contains(fileName.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Write the target version of FILENAME to the working directory,
+     *  adding a description of the problem to FAILURES if that fails. */
+    private void write(String fileName, List<String> failures) {
+        try {
+            _to.writeFile(fileName, Utils.join(_workDir, fileName));
+            _cache.update(fileName, _to.getShafromName(fileName));
+        } catch (RuntimeException excp) {
+            failures.add(fileName + ": " + excp.getMessage());
+        }
+    }
+
+    /** The commit being checked out. */
+    private final Commit _to;
+    /** The working directory. */
+    private final File _workDir;
+    /** The stat cache of the working directory. */
+    private final StatCache _cache;
+    /** Files to write, in path order. */
+    private final List<String> _writes = new ArrayList<>();
+    /** Files to delete, in path order. */
+    private final List<String> _deletes = new ArrayList<>();
+    /** Untracked files that would be overwritten. */
+    private final List<String> _untracked = new ArrayList<>();
+}
@@ -2,12 +2,23 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class Commit implements Serializable {
+    /** Serial version shared by all commits ever written, so that commits
+     *  from earlier versions stay readable. */
+    private static final long serialVersionUID = 3578023244360331219L;
 
     /** Date for this commit. */
     private final String _date;
@@ -25,12 +36,22 @@ public class Commit implements Serializable {
     private transient Commit _parent2;
     /** Commit parent2 sha-1 String. */
     private String _parent2Sha;
-    /** HashMap of file name to sha-1 code. */
-    private HashMap<String, String> _nameToSha = new HashMap<>();
-    /** HashMap of sha-1 code to file name. */
-    private HashMap<String, String> _shaToName = new HashMap<>();
-    /** HashMap of sha-1 code to file path. */
-    private HashMap<String, File> _shaToFile = new HashMap<>();
+    /** HashMap of file name to sha-1 code.  Only commits written before
+     *  commits had trees have this; it is null in newer ones. */
+    private HashMap<String, String> _nameToSha;
+    /** HashMap of sha-1 code to file name, present iff _nameToSha is. */
+    private HashMap<String, String> _shaToName;
+    /** Id of the tree holding this commit's files, or null if they are
+     *  listed in _nameToSha. */
+    private String _tree;
+    /** All of this commit's files, from path to sha-1 code, once listed. */
+    private transient Map<String, String> _files;
+    /** The inverse of _files, once computed. */
+    private transient Map<String, String> _filesBySha;
+    /** The cache holding this commit, or null if it is not cached. */
+    private transient CommitCache _cache;
+    /** The id under which _cache holds this commit. */
+    private transient String _cachedAs;
     public Commit(String message, String p1, Commit c1, String p2, Commit c2,
                   Repository repo) throws IOException {
         _objects = repo.getCommitPath();
@@ -50,66 +71,51 @@ public class Commit implements Serializable {
             _date = time(1);
         }
         if (_parent1 != null) {
-            _nameToSha = _parent1._nameToSha;
-            _shaToName = _parent1._shaToName;
-            _shaToFile = _parent1._shaToFile;
             checkStaging(repo.getAddStage(), repo.getRemStage());
+        } else {
+            _tree = Tree.update(getStore(), null, new TreeMap<>());
         }
     }
-    /** Makes changes to the commit based on files in the ADDSTAGE and
-     *  REMOVESTAGE. */
+    /** Makes this commit's tree from its first parent's files with the
+     *  changes in the ADDSTAGE and REMOVESTAGE, and clears them.  Only the
+     *  trees of directories holding changed files are written. */
     public void checkStaging(Staging addStage, Staging removeStage)
             throws IOException {
-        HashMap<String, File> addStagedFilePathMap =
-                addStage.getStagedNameToPath();
-        HashMap<String, File> remStagedFilePathMap =
-                removeStage.getStagedNameToPath();
-        if (addStagedFilePathMap.keySet().size() == 0
-                && remStagedFilePathMap.keySet().size() == 0) {
+        HashMap<String, String> addStagedFileShaMap =
+                addStage.getStagedNameToSha();
+        HashMap<String, String> remStagedFileShaMap =
+                removeStage.getStagedNameToSha();
+        if (addStagedFileShaMap.keySet().size() == 0
+                && remStagedFileShaMap.keySet().size() == 0) {
             Main.exitWithMessage("No changes added to the commit.");
         }
-        for (String fileName: addStagedFilePathMap.keySet()) {
-            copyFile(addStage.getShafromName(fileName),
-                    addStagedFilePathMap.get(fileName), fileName);
+        TreeMap<String, String> changes = new TreeMap<>();
+        if (_parent1._tree == null) {
+            changes.putAll(_parent1._nameToSha);
         }
-
-        for (String fileName: remStagedFilePathMap.keySet()) {
-            removeFromMap(fileName);
+        for (String fileName: addStagedFileShaMap.keySet()) {
+            String sha = addStagedFileShaMap.get(fileName);
+            if (!getStore().contains(sha)) {
+                throw Utils.error("missing staged object %s for %s", sha,
+                                  fileName);
+            }
+            changes.put(fileName, sha);
         }
+        for (String fileName: remStagedFileShaMap.keySet()) {
+            changes.put(fileName, null);
+        }
+        _tree = Tree.update(getStore(), _parent1._tree, changes);
         addStage.clear();
         removeStage.clear();
     }
 
-    /** Copies FILENAME with sha-1 SHA from FILEPATH to staging area, replacing
-     * contents if it exists. */
-    public void copyFile(String sha, File filePath, String fileName)
-            throws IOException {
-        File blobPath = Utils.join(_objects, sha);
-        removeFromMap(fileName);
-        if (!blobPath.exists()) {
-            blobPath.createNewFile();
-        }
-        addToMap(fileName, sha, blobPath);
-        Repository.writeFromFile(filePath, blobPath);
-    }
-    /** Remove FILENAME from Commit HashMaps. */
-    public void removeFromMap(String fileName) {
-        String oldSha = _nameToSha.remove(fileName);
-        _shaToFile.remove(oldSha);
-        _shaToName.remove(oldSha);
-    }
-    /** Add FILENAME with SHA-1 SHA and path PATH to Commit HashMaps. */
-    public void addToMap(String fileName, String sha, File path) {
-        _nameToSha.put(fileName, sha);
-        _shaToName.put(sha, fileName);
-        _shaToFile.put(sha, path);
-    }
+    /** Format of commit dates. */
+    private static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
 
     /** Returns the UNIX time formatted. Gives time 0 for T = 0
      * and otherwise returns system time. */
     private static String time(int t) {
-        SimpleDateFormat formatter =
-                new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
+        SimpleDateFormat formatter = new SimpleDateFormat(DATE_FORMAT);
         if (t == 0) {
             return formatter.format(new Date(0));
         }
@@ -124,6 +130,14 @@ public class Commit implements Serializable {
     public String getDate() {
         return _date;
     }
+    /** Return the commit's date in milliseconds since the epoch. */
+    public long getTimestamp() {
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(_date).getTime();
+        } catch (ParseException excp) {
+            throw Utils.error("malformed commit date: %s", _date);
+        }
+    }
     /** Return the commit's parent sha. */
     public String getParent1Sha() {
         return _parent1Sha;
@@ -136,45 +150,159 @@ public class Commit implements Serializable {
     public String getBranch() {
         return _branch;
     }
-    /** Return sha-1 code from FILENAME. */
+    /** Return sha-1 code from FILENAME, a path relative to the working
+     *  directory, or null if this commit does not track it. */
     public String getShafromName(String filename) {
-        return _nameToSha.get(filename);
+        if (_tree == null) {
+            return _nameToSha.get(filename);
+        } else if (_files != null) {
+            return _files.get(filename);
+        }
+        return Tree.lookup(getStore(), _tree, filename);
     }
     /** Return filename from sha-1 code SHA. */
     public String getNameFromSha(String sha) {
-        return _shaToName.get(sha);
+        return getShaToName().get(sha);
+    }
+    /** Returns the map of sha ids to their file paths. */
+    public Map<String, String> getShaToName() {
+        if (_tree == null) {
+            return _shaToName;
+        }
+        if (_filesBySha == null) {
+            _filesBySha = new HashMap<>();
+            for (Map.Entry<String, String> e : getNameToSha().entrySet()) {
+                _filesBySha.put(e.getValue(), e.getKey());
+            }
+            listed(_filesBySha.size());
+        }
+        return _filesBySha;
+    }
+    /** Returns the map of file paths to their sha id, listing the whole
+     *  tree the first time it is called. */
+    public Map<String, String> getNameToSha() {
+        if (_tree == null) {
+            return _nameToSha;
+        }
+        if (_files == null) {
+            _files = new HashMap<>();
+            Tree.flatten(getStore(), _tree, "", _files);
+            listed(_files.size());
+        }
+        return _files;
+    }
+    /** Record that this commit is held by CACHE as the commit with id
+     *  SHA, so that the cache can count the lists of files it builds. */
+    void cachedIn(CommitCache cache, String sha) {
+        _cache = cache;
+        _cachedAs = sha;
     }
-    /** Return file path from sha-1 code SHA. */
-    public File getFileFromSha(String sha) {
-        return _shaToFile.get(sha);
+    /** Tell the cache holding this commit, if any, that it has built a
+     *  list of N files. */
+    private void listed(int n) {
+        if (_cache != null) {
+            _cache.grew(_cachedAs, this,
+                        (long) n * CommitCache.FILE_ENTRY_BYTES);
+        }
     }
-    /** Returns the hashmap of sha ids to their file paths. */
-    public HashMap<String, String> getShaToName() {
-        return _shaToName;
+    /** Return the id of this commit's tree, or null if it lists its files
+     *  itself. */
+    public String getTree() {
+        return _tree;
     }
-    /** Returns the hashmap of file names to their sha id. */
-    public HashMap<String, String> getNameToSha() {
-        return _nameToSha;
+    /** Return the files whose ids differ between this commit and TO, in
+     *  path order, each mapped to the pair {id here, id in TO}, where null
+     *  stands for no file.  When both commits have trees, directories that
+     *  are the same in both are not read. */
+    public TreeMap<String, String[]> changesTo(Commit to) {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        if (_tree != null && to._tree != null) {
+            Tree.diff(getStore(), _tree, to._tree, "", changes);
+            return changes;
+        }
+        Map<String, String> from = getNameToSha(), target = to.getNameToSha();
+        for (Map.Entry<String, String> e : from.entrySet()) {
+            String other = target.get(e.getKey());
+            if (!e.getValue().equals(other)) {
+                changes.put(e.getKey(), new String[] { e.getValue(), other });
+            }
+        }
+        for (Map.Entry<String, String> e : target.entrySet()) {
+            if (!from.containsKey(e.getKey())) {
+                changes.put(e.getKey(), new String[] { null, e.getValue() });
+            }
+        }
+        return changes;
     }
-    /** Return if Commit includes S, where S could be either a filename or
-     * sha-1 ID. */
-    public boolean contains(String s) {
-        return _nameToSha.containsKey(s) || _shaToName.containsKey(s);
+    /** Return if Commit tracks the file FILENAME. */
+    public boolean contains(String fileName) {
+        return getShafromName(fileName) != null;
     }
     /** Print out the commit timestamp with sha CURSHA, message, sha id. */
     public void print(String curSha) {
-        System.out.println("===");
-        System.out.println("commit " + curSha);
+        print(curSha, System.out);
+    }
+    /** Prints the log entry of this commit, whose id is CURSHA, to OUT. */
+    public void print(String curSha, PrintStream out) {
+        out.println("===");
+        out.println("commit " + curSha);
         if (_parent2Sha != null) {
-            System.out.println("Merge: " + _parent1Sha.substring(0, 7)
+            out.println("Merge: " + _parent1Sha.substring(0, 7)
                     + " " +  _parent2Sha.substring(0, 7));
         }
-        System.out.println("Date: " + _date);
-        System.out.println(_message + '\n');
+        out.println("Date: " + _date);
+        out.println(_message + '\n');
+    }
+    /** Returns the contents of FILENAME in this commit, or null if this
+     *  commit does not track it. */
+    public byte[] getFileContents(String fileName) {
+        String sha = getShafromName(fileName);
+        if (sha == null) {
+            return null;
+        }
+        return getStore().read(sha);
+    }
+    /** Returns a stream over the contents of FILENAME in this commit,
+     *  decompressed as it is read, or null if this commit does not track
+     *  it. */
+    public InputStream openFile(String fileName) {
+        String sha = getShafromName(fileName);
+        if (sha == null) {
+            return null;
+        }
+        return getStore().stream(sha);
+    }
+    /** Returns a channel over the contents of FILENAME in this commit,
+     *  decompressed as it is read, or null if this commit does not track
+     *  it. */
+    public ReadableByteChannel openChannel(String fileName) {
+        String sha = getShafromName(fileName);
+        if (sha == null) {
+            return null;
+        }
+        return getStore().channel(sha);
+    }
+    /** Returns a read-only buffer holding the contents of FILENAME in this
+     *  commit, mapped from the object store where they are stored
+     *  uncompressed, or null if this commit does not track it. */
+    public ByteBuffer mapFile(String fileName) {
+        String sha = getShafromName(fileName);
+        if (sha == null) {
+            return null;
+        }
+        return getStore().map(sha);
+    }
+    /** Writes the contents of FILENAME in this commit to OUT, without
+     *  holding them in memory, and returns their size. */
+    public long copyFile(String fileName, WritableByteChannel out) {
+        return getStore().transferTo(getShafromName(fileName), out);
+    }
+    /** Writes the contents of FILENAME in this commit to DEST. */
+    public void writeFile(String fileName, File dest) {
+        getStore().writeTo(getShafromName(fileName), dest);
     }
-    /** Returns contents from the FILENAME in this commit. */
-    public String getFileContentsAsString(String fileName) {
-        return Utils.readContentsAsString(_shaToFile.get
-            (_nameToSha.get(fileName)));
+    /** Returns the object store holding this commit's blobs and trees. */
+    public ObjectStore getStore() {
+        return ObjectStore.open(_objects);
     }
 }
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A cache of deserialized commits, by full id, that evicts the least
+ *  recently used commits once it holds more than a given number of
+ *  commits or more than a given estimated number of bytes.  The size of
+ *  a commit is estimated from the size of its file, plus the size of the
+ *  lists of its files once a cached commit builds them.  Commits are
+ *  never modified once written, so a cached commit never goes stale.
+ */
+class CommitCache {
+
+    /** Default maximum number of commits held. */
+    static final int MAX_ENTRIES = 1024;
+    /** Default maximum estimated size of the commits held. */
+    static final long MAX_BYTES = 16L << 20;
+    /** Ratio of the in-memory size of a commit to the size of its file. */
+    static final int EXPANSION = 8;
+    /** Estimated in-memory size of one entry of a list of a commit's
+     *  files: a map entry holding a path and an id. */
+    static final int FILE_ENTRY_BYTES = 200;
+
+    /** A cache holding at most MAXENTRIES commits of at most MAXBYTES
+     *  estimated bytes in all. */
+    CommitCache(int maxEntries, long maxBytes) {
+        _maxEntries = maxEntries;
+        _maxBytes = maxBytes;
+    }
+
+    /** Return the commit with full id SHA, or null if it is not cached. */
+    Commit get(String sha) {
+        Entry entry = _entries.get(sha);
+        if (entry == null) {
+            Stats.count(Stats.Counter.COMMIT_CACHE_MISSES);
+            return null;
+        }
+        Stats.count(Stats.Counter.COMMIT_CACHE_HITS);
+        return entry.commit;
+    }
+
+    /** Cache COMMIT as the commit with full id SHA, whose file is
+     *  FILESIZE bytes long. */
+    void put(String sha, Commit commit, long fileSize) {
+        long size = EXPANSION * fileSize;
+        if (size > _maxBytes) {
+            return;
+        }
+        Entry old = _entries.put(sha, new Entry(commit, size));
+        if (old != null) {
+            _bytes -= old.size;
+        }
+        _bytes += size;
+        commit.cachedIn(this, sha);
+        evict();
+    }
+
+    /** Add BYTES to the estimated size of COMMIT, cached as the commit
+     *  with full id SHA, as when it has listed its files, and evict
+     *  commits if the cache is now too large.  Does nothing if COMMIT has
+     *  been evicted. */
+    void grew(String sha, Commit commit, long bytes) {
+        Entry entry = _entries.get(sha);
+        if (entry == null || entry.commit != commit) {
+            return;
+        }
+        entry.size += bytes;
+        _bytes += bytes;
+        evict();
+    }
+
+    /** Evict the least recently used commits until the cache holds at
+     *  most its maximum number of commits and estimated bytes. */
+    private void evict() {
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_entries.size() > _maxEntries || _bytes > _maxBytes) {
+            _bytes -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    /** Return the number of commits held. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the estimated size of the commits held. */
+    long bytes() {
+        return _bytes;
+    }
+
+    /** One cached commit. */
+    private static class Entry {
+        /** An entry for COMMIT, estimated to take SIZE bytes. */
+        Entry(Commit commit, long size) {
+            this.commit = commit;
+            this.size = size;
+        }
+
+        /** The commit. */
+        private final Commit commit;
+        /** Its estimated size. */
+        private long size;
+    }
+
+    /** Maximum number of commits held. */
+    private final int _maxEntries;
+    /** Maximum estimated size of the commits held. */
+    private final long _maxBytes;
+    /** The cached commits, least recently used first. */
+    private final Map<String, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Estimated size of the commits held. */
+    private long _bytes;
+}
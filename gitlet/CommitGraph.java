@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/** The ancestry of every commit in a repository, kept in a file of
+ *  fixed-width records so that history walks never need to deserialize
+ *  Commit objects.  Commits are numbered by their position in the file,
+ *  and each record holds a commit's id, the positions of its parents,
+ *  its generation number (one more than the largest generation of its
+ *  parents, 1 for the initial commit) and its date.  Parents always
+ *  precede their children, so new commits are simply appended.
+ */
+class CommitGraph {
+
+    /** Magic number at the start of the file ("GCGR"). */
+    static final int MAGIC = 0x47434752;
+    /** Current version of the file format. */
+    static final int VERSION = 1;
+    /** Size of the file header. */
+    static final int HEADER_SIZE = 8;
+    /** Size of each record. */
+    static final int RECORD_SIZE = Utils.UID_BYTES + 4 + 4 + 4 + 8;
+    /** Parent position recorded for a missing parent. */
+    static final int NONE = -1;
+
+    /** A graph stored in FILE, which need not exist yet. */
+    CommitGraph(File file) {
+        _file = file;
+        _shas = new String[16];
+        _parents1 = new int[16];
+        _parents2 = new int[16];
+        _generations = new int[16];
+        _dates = new long[16];
+        _positions = new HashMap<>();
+        if (file.exists()) {
+            ByteBuffer data = ByteBuffer.wrap(Utils.readContents(file));
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw Utils.error("corrupt commit graph");
+            }
+            byte[] id = new byte[Utils.UID_BYTES];
+            while (data.remaining() >= RECORD_SIZE) {
+                data.get(id);
+                add(Utils.bytesToSha(id, 0), data.getInt(), data.getInt(),
+                    data.getInt(), data.getLong());
+            }
+        }
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff the commit with id SHA is in the graph. */
+    boolean contains(String sha) {
+        return _positions.containsKey(sha);
+    }
+
+    /** Return the position of the commit with id SHA.  Throws
+     *  GitletException if it is not in the graph. */
+    int position(String sha) {
+        Integer pos = _positions.get(sha);
+        if (pos == null) {
+            throw Utils.error("commit %s missing from commit graph", sha);
+        }
+        return pos;
+    }
+
+    /** Return the id of the commit at POS. */
+    String sha(int pos) {
+        return _shas[pos];
+    }
+
+    /** Return the position of the first parent of the commit at POS, or
+     *  NONE. */
+    int parent1(int pos) {
+        return _parents1[pos];
+    }
+
+    /** Return the position of the second parent of the commit at POS, or
+     *  NONE. */
+    int parent2(int pos) {
+        return _parents2[pos];
+    }
+
+    /** Return the generation number of the commit at POS. */
+    int generation(int pos) {
+        return _generations[pos];
+    }
+
+    /** Return the date of the commit at POS in milliseconds since the
+     *  epoch. */
+    long date(int pos) {
+        return _dates[pos];
+    }
+
+    /** Return the positions of all commits, newest first by date, with
+     *  commits of the same date in reverse order of position.  Commits
+     *  are normally appended as they are made, so positions are already
+     *  in date order and no sorting is needed; only graphs rebuilt from
+     *  an older repository's commit table are sorted. */
+    int[] byDate() {
+        int[] result = new int[_size];
+        boolean sorted = true;
+        for (int k = 0; k < _size; k += 1) {
+            result[k] = _size - 1 - k;
+            if (k > 0 && _dates[k - 1] > _dates[k]) {
+                sorted = false;
+            }
+        }
+        if (sorted) {
+            return result;
+        }
+        Integer[] order = new Integer[_size];
+        for (int k = 0; k < _size; k += 1) {
+            order[k] = result[k];
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(_dates[b], _dates[a]));
+        for (int k = 0; k < _size; k += 1) {
+            result[k] = order[k];
+        }
+        return result;
+    }
+
+    /** Record the commit with id SHA, parents P1SHA and P2SHA (either of
+     *  which may be null) and date DATE, appending it to the file.  Both
+     *  parents must already be in the graph. */
+    void append(String sha, String p1Sha, String p2Sha, long date) {
+        if (contains(sha)) {
+            return;
+        }
+        int p1 = p1Sha == null ? NONE : position(p1Sha);
+        int p2 = p2Sha == null ? NONE : position(p2Sha);
+        int gen = 1 + Math.max(p1 == NONE ? 0 : _generations[p1],
+                               p2 == NONE ? 0 : _generations[p2]);
+        add(sha, p1, p2, gen, date);
+        boolean fresh = !_file.exists() || _file.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(_file,
+                                                               true)))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            out.write(Utils.shaToBytes(sha));
+            out.writeInt(p1);
+            out.writeInt(p2);
+            out.writeInt(gen);
+            out.writeLong(date);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.written(_file);
+    }
+
+    /** Rewrite the file so that it holds only the commits whose positions
+     *  are in KEEP, which must include the parents of each of them.  The
+     *  commits keep their order, but are renumbered; this graph is left
+     *  as it was, and the rewritten one must be read anew. */
+    void retain(BitSet keep) {
+        int[] renumbered = new int[_size];
+        File tmp = Transaction.temp(_file);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int next = 0;
+            for (int pos = keep.nextSetBit(0); pos >= 0 && pos < _size;
+                 pos = keep.nextSetBit(pos + 1)) {
+                renumbered[pos] = next;
+                next += 1;
+                out.write(Utils.shaToBytes(_shas[pos]));
+                out.writeInt(_parents1[pos] == NONE ? NONE
+                             : renumbered[_parents1[pos]]);
+                out.writeInt(_parents2[pos] == NONE ? NONE
+                             : renumbered[_parents2[pos]]);
+                out.writeInt(_generations[pos]);
+                out.writeLong(_dates[pos]);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.install(tmp, _file);
+    }
+
+    /** Return true iff the commit with id ANCESTOR is DESCENDANT or one of
+     *  its ancestors.  Commits whose generation is no greater than that of
+     *  ANCESTOR cannot lead to it and are not explored. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int target = position(ancestor);
+        int floor = _generations[target];
+        BitSet seen = new BitSet(_size);
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(position(descendant));
+        while (!work.isEmpty()) {
+            int pos = work.pop();
+            if (pos == target) {
+                return true;
+            }
+            if (pos == NONE || seen.get(pos) || _generations[pos] <= floor) {
+                continue;
+            }
+            seen.set(pos);
+            work.push(_parents1[pos]);
+            work.push(_parents2[pos]);
+        }
+        return false;
+    }
+
+    /** Return the split point of the commits with ids CURSHA and GIVENSHA:
+     *  the ancestor of CURSHA closest to it in breadth-first order (first
+     *  parents before second parents) that is also an ancestor of
+     *  GIVENSHA. */
+    String mergeBase(String curSha, String givenSha) {
+        BitSet givenAncestors = ancestors(position(givenSha));
+        BitSet seen = new BitSet(_size);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(position(curSha));
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            if (givenAncestors.get(pos)) {
+                return _shas[pos];
+            }
+            for (int parent : new int[] { _parents1[pos], _parents2[pos] }) {
+                if (parent != NONE && !seen.get(parent)) {
+                    seen.set(parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return the set of positions of the commit at POS and all of its
+     *  ancestors, visiting each shared ancestor only once. */
+    BitSet ancestors(int pos) {
+        BitSet result = new BitSet(_size);
+        addAncestors(pos, result);
+        return result;
+    }
+
+    /** Add the positions of the commit at POS and all of its ancestors to
+     *  RESULT, not exploring past commits already in RESULT. */
+    void addAncestors(int pos, BitSet result) {
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(pos);
+        while (!work.isEmpty()) {
+            int p = work.pop();
+            if (p == NONE || result.get(p)) {
+                continue;
+            }
+            result.set(p);
+            work.push(_parents1[p]);
+            work.push(_parents2[p]);
+        }
+    }
+
+    /** Add a record for SHA with parent positions P1 and P2, generation
+     *  GEN and date DATE to the in-memory tables. */
+    private void add(String sha, int p1, int p2, int gen, long date) {
+        if (_size == _shas.length) {
+            int cap = 2 * _size;
+            _shas = Arrays.copyOf(_shas, cap);
+            _parents1 = Arrays.copyOf(_parents1, cap);
+            _parents2 = Arrays.copyOf(_parents2, cap);
+            _generations = Arrays.copyOf(_generations, cap);
+            _dates = Arrays.copyOf(_dates, cap);
+        }
+        _shas[_size] = sha;
+        _parents1[_size] = p1;
+        _parents2[_size] = p2;
+        _generations[_size] = gen;
+        _dates[_size] = date;
+        _positions.put(sha, _size);
+        _size += 1;
+    }
+
+    /** The file holding the graph. */
+    private final File _file;
+    /** Number of commits in the graph. */
+    private int _size;
+    /** Commit ids by position. */
+    private String[] _shas;
+    /** First parent positions by position. */
+    private int[] _parents1;
+    /** Second parent positions by position. */
+    private int[] _parents2;
+    /** Generation numbers by position. */
+    private int[] _generations;
+    /** Commit dates by position. */
+    private long[] _dates;
+    /** Positions by commit id. */
+    private final HashMap<String, Integer> _positions;
+}
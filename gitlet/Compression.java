@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Compression of stored objects.  An encoded object is a header giving
+ *  its codec (STORED or DEFLATED) and its size before encoding, as an int
+ *  or, for the large objects written by encodeLarge, a long, followed by
+ *  the encoded contents.  Objects kept in files of their own, such as
+ *  commits, are further preceded by FILE_MAGIC, which distinguishes them
+ *  from the raw serialized objects written by earlier versions of Gitlet.
+ *
+ *  The deflate level is taken from the system property gitlet.compression
+ *  or else the environment variable GITLET_COMPRESSION, and ranges from 0
+ *  (store everything uncompressed, fastest) to 9 (smallest).
+ */
+class Compression {
+
+    /** Codec of contents stored as they are. */
+    static final byte STORED = 0;
+    /** Codec of contents compressed with Deflater. */
+    static final byte DEFLATED = 1;
+    /** Size of the codec and raw size header. */
+    static final int HEADER_SIZE = 5;
+    /** Size of the codec and raw size header of a large object, whose
+     *  size is a long. */
+    static final int LARGE_HEADER_SIZE = 9;
+    /** Magic number at the start of encoded object files ("GZOB"). */
+    static final int FILE_MAGIC = 0x475a4f42;
+    /** Deflate level used when none is configured. */
+    static final int DEFAULT_LEVEL = 6;
+
+    /** Return the configured deflate level. */
+    static int level() {
+        if (_level < 0) {
+            String value = System.getProperty("gitlet.compression",
+                                              System.getenv(
+                                                  "GITLET_COMPRESSION"));
+            _level = DEFAULT_LEVEL;
+            if (value != null) {
+                try {
+                    _level = Math.max(0, Math.min(9,
+                                                  Integer.parseInt(value)));
+                } catch (NumberFormatException excp) {
+                    _level = DEFAULT_LEVEL;
+                }
+            }
+        }
+        return _level;
+    }
+
+    /** Return RAW encoded with a header, compressed unless compression is
+     *  turned off or does not make it smaller. */
+    static byte[] encode(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (level() > 0) {
+                writeHeader(out, DEFLATED, raw.length);
+                deflate(raw, out);
+                if (out.size() < HEADER_SIZE + raw.length) {
+                    return out.toByteArray();
+                }
+                out.reset();
+            }
+            writeHeader(out, STORED, raw.length);
+            out.write(raw);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the size before encoding of the object encoded in DATA
+     *  starting at OFFSET. */
+    static int rawSize(byte[] data, int offset) {
+        return ((data[offset + 1] & 0xff) << 24)
+            | ((data[offset + 2] & 0xff) << 16)
+            | ((data[offset + 3] & 0xff) << 8) | (data[offset + 4] & 0xff);
+    }
+
+    /** Write the SIZE bytes read from IN to OUT, preceded by a large
+     *  header, compressed unless compression is turned off.  The contents
+     *  are encoded as they are read, in a fixed amount of memory, and are
+     *  compressed even when that does not make them smaller. */
+    static void encodeLarge(InputStream in, long size, OutputStream out)
+        throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeByte(level() > 0 ? DEFLATED : STORED);
+        header.writeLong(size);
+        if (level() == 0) {
+            in.transferTo(out);
+            return;
+        }
+        Deflater deflater = new Deflater(level());
+        try {
+            DeflaterOutputStream zip =
+                new DeflaterOutputStream(out, deflater, 1 << 16);
+            in.transferTo(zip);
+            zip.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Return the object encoded in DATA starting at OFFSET, decoding it
+     *  directly into an array of its final size. */
+    static byte[] decode(byte[] data, int offset) {
+        return decode(data, offset, HEADER_SIZE, rawSize(data, offset));
+    }
+
+    /** Return the object encoded with a large header in DATA starting at
+     *  OFFSET, as for decode.  Throws GitletException if it is too large
+     *  for an array. */
+    static byte[] decodeLarge(byte[] data, int offset) {
+        long size = 0;
+        for (int i = 1; i < LARGE_HEADER_SIZE; i += 1) {
+            size = (size << 8) | (data[offset + i] & 0xff);
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw Utils.error("object too large to read into memory");
+        }
+        return decode(data, offset, LARGE_HEADER_SIZE, (int) size);
+    }
+
+    /** Return the object of RAWSIZE bytes encoded in DATA starting at
+     *  OFFSET, after a header of HEADERSIZE bytes beginning with its
+     *  codec. */
+    private static byte[] decode(byte[] data, int offset, int headerSize,
+                                 int rawSize) {
+        byte[] raw = new byte[rawSize];
+        int start = offset + headerSize;
+        switch (data[offset]) {
+        case STORED:
+            System.arraycopy(data, start, raw, 0, raw.length);
+            return raw;
+        case DEFLATED:
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data, start, data.length - start);
+                int n = 0;
+                while (n < raw.length && !inflater.finished()) {
+                    int k = inflater.inflate(raw, n, raw.length - n);
+                    if (k == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    n += k;
+                }
+                if (n != raw.length) {
+                    throw Utils.error("corrupt compressed object");
+                }
+                return raw;
+            } catch (DataFormatException excp) {
+                throw Utils.error("corrupt compressed object");
+            } finally {
+                inflater.end();
+            }
+        default:
+            throw Utils.error("unknown codec %d", data[offset]);
+        }
+    }
+
+    /** Write RAW to FILE as an encoded object file, replacing it as part
+     *  of the current Transaction. */
+    static void writeFile(File file, byte[] raw) {
+        Events.ObjectWrite event = new Events.ObjectWrite();
+        event.begin();
+        File tmp = Transaction.temp(file);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmp.toPath())))) {
+            out.writeInt(FILE_MAGIC);
+            if (level() == 0) {
+                writeHeader(out, STORED, raw.length);
+                out.write(raw);
+            } else {
+                writeHeader(out, DEFLATED, raw.length);
+                deflate(raw, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.install(tmp, file);
+        event.path = file.getPath();
+        event.bytes = raw.length;
+        event.commit();
+    }
+
+    /** Return an object of type T read from FILE, which is either an
+     *  encoded object file or, as written by earlier versions of Gitlet, a
+     *  raw serialized object, casting it to EXPECTEDCLASS.  The object is
+     *  decoded as it is deserialized.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static <T extends Serializable> T readObject(File file,
+                                                 Class<T> expectedClass) {
+        Events.ObjectRead event = new Events.ObjectRead();
+        event.begin();
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(
+                     file.toPath())))) {
+            in.mark(4);
+            if (in.readInt() != FILE_MAGIC) {
+                in.reset();
+                return expectedClass.cast(
+                    new ObjectInputStream(in).readObject());
+            }
+            byte codec = in.readByte();
+            in.readInt();
+            InputStream body;
+            switch (codec) {
+            case STORED:
+                body = in;
+                break;
+            case DEFLATED:
+                body = new InflaterInputStream(in);
+                break;
+            default:
+                throw Utils.error("unknown codec %d", codec);
+            }
+            return expectedClass.cast(new ObjectInputStream(body)
+                                      .readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = file.getPath();
+                event.bytes = file.length();
+                event.commit();
+            }
+        }
+    }
+
+    /** Write a header for an object of RAWSIZE bytes encoded with CODEC to
+     *  OUT. */
+    private static void writeHeader(OutputStream out, byte codec,
+                                    int rawSize) throws IOException {
+        out.write(codec);
+        out.write(rawSize >>> 24);
+        out.write(rawSize >>> 16);
+        out.write(rawSize >>> 8);
+        out.write(rawSize);
+    }
+
+    /** Write RAW to OUT, compressed at the configured level. */
+    private static void deflate(byte[] raw, OutputStream out)
+        throws IOException {
+        Deflater deflater = new Deflater(level());
+        try {
+            DeflaterOutputStream zip =
+                new DeflaterOutputStream(out, deflater, 1 << 16);
+            zip.write(raw);
+            zip.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** The configured deflate level, or -1 if not yet determined. */
+    private static int _level = -1;
+}
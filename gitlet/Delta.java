@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Delta encoding of one byte sequence (the target) against another (the
+ *  base).  A delta starts with the lengths of the base and target and
+ *  continues with instructions, each either COPY (an offset and length
+ *  in the base) or INSERT (a length followed by that many literal bytes).
+ *  All numbers are unsigned variable-length integers, seven bits per byte
+ *  with the high bit marking continuation.
+ *
+ *  The encoder indexes the base by the hash of each aligned BLOCK-byte
+ *  block, slides a window of the same size over the target with a
+ *  rolling hash, and turns every verified hit into a COPY extended as far
+ *  as the two sequences agree in both directions.
+ */
+class Delta {
+
+    /** Instruction code for copying from the base. */
+    static final int COPY = 0;
+    /** Instruction code for literal bytes. */
+    static final int INSERT = 1;
+    /** Size of the blocks of the base that are indexed. */
+    static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** Return the delta that turns BASE into TARGET. */
+    static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int p = 0; p + BLOCK <= base.length; p += BLOCK) {
+            blocks.putIfAbsent(hash(base, p), p);
+        }
+        int high = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            high *= PRIME;
+        }
+        int literal = 0, t = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (t + BLOCK <= target.length) {
+            Integer b = blocks.get(h);
+            if (b != null && Arrays.equals(base, b, b + BLOCK,
+                                           target, t, t + BLOCK)) {
+                int start = t, from = b;
+                while (start > literal && from > 0
+                       && base[from - 1] == target[start - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = t + BLOCK, to = b + BLOCK;
+                while (end < target.length && to < base.length
+                       && base[to] == target[end]) {
+                    end += 1;
+                    to += 1;
+                }
+                insert(out, target, literal, start);
+                out.write(COPY);
+                writeVarint(out, from);
+                writeVarint(out, end - start);
+                literal = t = end;
+                if (t + BLOCK <= target.length) {
+                    h = hash(target, t);
+                }
+                continue;
+            }
+            if (t + BLOCK < target.length) {
+                h = (h - target[t] * high) * PRIME + target[t + BLOCK];
+            }
+            t += 1;
+        }
+        insert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the target reconstructed by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("delta does not apply to its base");
+        }
+        byte[] target = new byte[readVarint(delta, pos)];
+        int t = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int from = readVarint(delta, pos), len = readVarint(delta, pos);
+                System.arraycopy(base, from, target, t, len);
+                t += len;
+            } else {
+                int len = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], target, t, len);
+                pos[0] += len;
+                t += len;
+            }
+        }
+        if (t != target.length) {
+            throw Utils.error("corrupt delta");
+        }
+        return target;
+    }
+
+    /** Write an INSERT of TARGET[FROM .. TO-1] to OUT, if not empty. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Return the hash of DATA[P .. P+BLOCK-1], computed as the rolling
+     *  hash in encode computes it. */
+    private static int hash(byte[] data, int p) {
+        int h = 0;
+        for (int i = p; i < p + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    /** Write the non-negative VALUE to OUT as a variable-length integer. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Read a variable-length integer from DATA at POS[0], advancing
+     *  POS[0] past it. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+}
@@ -1,24 +1,26 @@
 package gitlet;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.InvalidPathException;
 
-import static java.lang.Math.max;
-
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  Differences are computed by DiffEngine in time and space roughly
+ *  proportional to the sizes of the sequences and of the difference.
  *  @author P. N. Hilfinger */
 public class Diff {
 
@@ -27,8 +29,6 @@ public class Diff {
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -48,8 +48,44 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
-        _lls = null;
-        _todo = null;
+    }
+
+    /** Set the sequences currently being compared to the lines of
+     *  CONTENTS1 and CONTENTS2, split as for Files.readAllLines.  Null
+     *  arrays set empty lists. */
+    public void setSequences(byte[] contents1, byte[] contents2) {
+        setSequences(contents1 == null ? null
+                     : new ByteArrayInputStream(contents1),
+                     contents2 == null ? null
+                     : new ByteArrayInputStream(contents2));
+    }
+
+    /** Set the sequences currently being compared to the lines read from
+     *  IN1 and IN2, split as for Files.readAllLines.  Null streams set
+     *  empty lists.  The streams are not closed. */
+    public void setSequences(InputStream in1, InputStream in2) {
+        _lines1 = lines(in1);
+        _lines2 = lines(in2);
+    }
+
+    /** Return the lines of the UTF-8 text read from IN, or an empty list
+     *  if IN is null. */
+    private static List<String> lines(InputStream in) {
+        if (in == null) {
+            return Collections.emptyList();
+        }
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            ArrayList<String> result = new ArrayList<>();
+            for (String line = reader.readLine(); line != null;
+                 line = reader.readLine()) {
+                result.add(line);
+            }
+            return result;
+        } catch (IOException excp) {
+            return Collections.emptyList();
+        }
     }
 
     /** Return the first of the current sequences. */
@@ -72,80 +108,11 @@ public class Diff {
         return _lines2.get(k);
     }
 
-    /** Return the length of the longest subsequence of the first K1 and K2
-     *  items, respectively, of the current data sequences. */
-    public int lls(int k1, int k2) {
-        checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
-        if (k1 == 0 || k2 == 0
-            || k1 > _lines1.size() || k2 > _lines2.size()) {
-            return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
-            }
-        }
-        return _lls[k1][k2];
-    }
-
-    /** Return the length of the longest common subsequence of the current
-     *  data subsequences. */
-    public int lls() {
-        checkData();
-        return lls(_lines1.size(), _lines2.size());
-    }
-
     /** Return true iff the sequences currently being compared have identical
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return _lines1.equals(_lines2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -164,34 +131,38 @@ public class Diff {
      *  a sequence of 3n values s01, s02, L0, s11, s12, L1,..., where
      *  si1 is the starting line position of the subsequence in the
      *  first file (0-based), si2 is the starting position in the second
-     *  file, and Li is the length of the subsequence. */
+     *  file, and Li is the length of the subsequence.  The subsequence is
+     *  the one found by the current algorithm (see setAlgorithm), which
+     *  for MYERS is a longest one. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
-            } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
-                }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
+        checkData();
+        int[] match = DiffEngine.match(_lines1, _lines2, _algorithm);
+        ArrayList<Integer> resultList = new ArrayList<>();
+        int k1 = 0;
+        while (k1 < match.length) {
+            if (match[k1] < 0) {
+                k1 += 1;
+                continue;
+            }
+            int L;
+            L = 1;
+            while (k1 + L < match.length && match[k1 + L] == match[k1] + L) {
+                L += 1;
             }
+            resultList.add(k1);
+            resultList.add(match[k1]);
+            resultList.add(L);
+            k1 += L;
         }
         return toIntArr(resultList);
     }
 
+    /** Use ALGORITHM to match the sequences in commonSubsequence and
+     *  diffs.  The default is MYERS. */
+    public void setAlgorithm(DiffEngine.Algorithm algorithm) {
+        _algorithm = algorithm;
+    }
+
     /** Return the edit that converts the first of the sequences being compared
      *  to the second. This is a sequence of 4n values d0, dL0, a0, aL0, ...,
      *  where the lines [di .. di + dL0 - 1] are the ranges of line
@@ -201,6 +172,9 @@ public class Diff {
      *  dLi or aLi, but not both, may be 0, indicating respectively simple
      *  removal of lines or addition of lines. */
     public int[] diffs() {
+        Events.Diff event = new Events.Diff();
+        event.begin();
+        long start = Stats.start();
         int[] common = commonSubsequence();
         ArrayList<Integer> result = new ArrayList<>();
         int e1, e2;
@@ -221,6 +195,14 @@ public class Diff {
             result.add(e2);
             result.add(_lines2.size() - e2);
         }
+        Stats.count(Stats.Counter.DIFFS);
+        Stats.count(Stats.Counter.DIFF_LINES, _lines1.size() + _lines2.size());
+        Stats.stop(Stats.Timer.DIFF, start);
+        event.lines1 = _lines1.size();
+        event.lines2 = _lines2.size();
+        event.hunks = result.size() / 4;
+        event.algorithm = _algorithm.toString();
+        event.commit();
         return toIntArr(result);
     }
 
@@ -232,45 +214,10 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
-    }
-
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
-    }
-
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
-    }
-
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
-    }
-
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
-
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** The algorithm used by commonSubsequence. */
+    private DiffEngine.Algorithm _algorithm = DiffEngine.Algorithm.MYERS;
 
 }
@@ -0,0 +1,406 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Computes which lines of two sequences correspond, for Diff.  Lines are
+ *  first replaced by small integers so that all comparisons are integer
+ *  comparisons.  Three algorithms are available:
+ *
+ *  MYERS is Myers' O((N+M)D) greedy algorithm.  While the path being
+ *  traced fits in a fixed budget it keeps the whole trace and backtracks
+ *  through it; beyond that it switches to the linear-space variant, which
+ *  finds the middle snake of the edit graph and recurses on the two
+ *  halves on either side of it.
+ *
+ *  PATIENCE anchors the comparison on lines that occur exactly once in
+ *  each sequence, taking the longest increasing run of such lines, and
+ *  recurses between anchors, using MYERS where there are no anchors.
+ *
+ *  HISTOGRAM anchors on the longest common region around the line that
+ *  occurs least often in the first sequence, and recurses on both sides,
+ *  using MYERS where no line is rare enough.
+ */
+class DiffEngine {
+
+    /** The available algorithms. */
+    enum Algorithm {
+        /** Myers' algorithm (the default). */
+        MYERS,
+        /** Patience diff. */
+        PATIENCE,
+        /** Histogram diff. */
+        HISTOGRAM;
+
+        /** Return the algorithm named NAME, ignoring case, or null if
+         *  there is none. */
+        static Algorithm named(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.name().equalsIgnoreCase(name)) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Largest number of ints the greedy algorithm may use for its trace
+     *  before switching to the linear-space variant. */
+    static final int TRACE_BUDGET = 1 << 22;
+    /** Largest number of occurrences a line may have in the first
+     *  sequence to anchor a histogram diff. */
+    static final int MAX_CHAIN = 64;
+
+    /** Return an array giving, for each line of LINES1, the position of
+     *  the line of LINES2 that it corresponds to under ALGORITHM, or -1 if
+     *  it corresponds to none.  Corresponding lines are equal and appear in
+     *  the same order in both sequences. */
+    static int[] match(List<String> lines1, List<String> lines2,
+                       Algorithm algorithm) {
+        HashMap<String, Integer> codes = new HashMap<>();
+        DiffEngine engine =
+            new DiffEngine(encode(lines1, codes), encode(lines2, codes));
+        int n = lines1.size(), m = lines2.size();
+        switch (algorithm) {
+        case PATIENCE:
+            engine.patience(0, n, 0, m);
+            break;
+        case HISTOGRAM:
+            engine.histogram(0, n, 0, m);
+            break;
+        default:
+            engine.myers(0, n, 0, m);
+            break;
+        }
+        return engine._match;
+    }
+
+    /** Return LINES with each distinct line replaced by its number in
+     *  CODES, adding lines not yet numbered. */
+    private static int[] encode(List<String> lines,
+                                HashMap<String, Integer> codes) {
+        int[] result = new int[lines.size()];
+        int i = 0;
+        for (String line : lines) {
+            Integer code = codes.get(line);
+            if (code == null) {
+                code = codes.size();
+                codes.put(line, code);
+            }
+            result[i] = code;
+            i += 1;
+        }
+        return result;
+    }
+
+    /** An engine comparing the encoded sequences A and B. */
+    private DiffEngine(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _match = new int[a.length];
+        Arrays.fill(_match, -1);
+    }
+
+    /** Match _a[A0 .. A1-1] against _b[B0 .. B1-1] with Myers' algorithm. */
+    private void myers(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+            _match[a0] = b0;
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _a[a1 - 1] == _b[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+            _match[a1] = b1;
+        }
+        if (a0 == a1 || b0 == b1 || greedy(a0, a1, b0, b1)) {
+            return;
+        }
+        int[] split = bisect(a0, a1, b0, b1);
+        if (split != null) {
+            myers(a0, split[0], b0, split[1]);
+            myers(split[0], a1, split[1], b1);
+        }
+    }
+
+    /** Match _a[A0 .. A1-1] against _b[B0 .. B1-1] by the greedy algorithm,
+     *  keeping the trace of furthest-reaching paths for backtracking.
+     *  Returns false, matching nothing, if the trace would exceed
+     *  TRACE_BUDGET. */
+    private boolean greedy(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0, max = n + m, off = max + 1;
+        int[] v = new int[2 * max + 3];
+        ArrayList<int[]> trace = new ArrayList<>();
+        long used = 0;
+        for (int d = 0; d <= max; d += 1) {
+            used += 2 * d + 3;
+            if (used > TRACE_BUDGET) {
+                return false;
+            }
+            trace.add(Arrays.copyOfRange(v, off - d - 1, off + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[off + k - 1] < v[off + k + 1])) {
+                    x = v[off + k + 1];
+                } else {
+                    x = v[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && _a[a0 + x] == _b[b0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[off + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, a0, b0, n, m);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Record the matches on the path found by greedy for the ranges
+     *  starting at A0 and B0 of lengths N and M, whose trace is TRACE. */
+    private void backtrack(ArrayList<int[]> trace, int a0, int b0,
+                           int n, int m) {
+        int x = n, y = m;
+        for (int d = trace.size() - 1; d >= 0; d -= 1) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && v[k - 1 + d + 1] < v[k + 1 + d + 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = d == 0 ? 0 : v[prevK + d + 1];
+            int prevY = d == 0 ? 0 : prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+                _match[a0 + x] = b0 + y;
+            }
+            x = prevX;
+            y = prevY;
+        }
+    }
+
+    /** Return the point {X, Y} at which the middle snake of the edit graph
+     *  of _a[A0 .. A1-1] and _b[B0 .. B1-1] crosses, splitting the problem
+     *  in two, or null if the ranges have nothing in common.  Uses space
+     *  linear in the lengths of the ranges. */
+    private int[] bisect(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int max = (n + m + 1) / 2, off = max, len = 2 * max + 2;
+        int[] v1 = new int[len], v2 = new int[len];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[off + 1] = 0;
+        v2[off + 1] = 0;
+        int delta = n - m;
+        boolean front = delta % 2 != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < max; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int i = off + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[i - 1] < v1[i + 1])) {
+                    x1 = v1[i + 1];
+                } else {
+                    x1 = v1[i - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && _a[a0 + x1] == _b[b0 + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                v1[i] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int j = off + delta - k1;
+                    if (j >= 0 && j < len && v2[j] != -1
+                        && x1 >= n - v2[j]) {
+                        return new int[] { a0 + x1, b0 + y1 };
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int i = off + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[i - 1] < v2[i + 1])) {
+                    x2 = v2[i + 1];
+                } else {
+                    x2 = v2[i - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                       && _a[a1 - 1 - x2] == _b[b1 - 1 - y2]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                v2[i] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int j = off + delta - k2;
+                    if (j >= 0 && j < len && v1[j] != -1) {
+                        int x1 = v1[j];
+                        int y1 = off + x1 - j;
+                        if (x1 >= n - x2) {
+                            return new int[] { a0 + x1, b0 + y1 };
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Match _a[A0 .. A1-1] against _b[B0 .. B1-1] with patience diff. */
+    private void patience(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+            _match[a0] = b0;
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _a[a1 - 1] == _b[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+            _match[a1] = b1;
+        }
+        if (a0 == a1 || b0 == b1) {
+            return;
+        }
+        int[][] anchors = uniqueAnchors(a0, a1, b0, b1);
+        if (anchors.length == 0) {
+            myers(a0, a1, b0, b1);
+            return;
+        }
+        for (int[] anchor : anchors) {
+            patience(a0, anchor[0], b0, anchor[1]);
+            _match[anchor[0]] = anchor[1];
+            a0 = anchor[0] + 1;
+            b0 = anchor[1] + 1;
+        }
+        patience(a0, a1, b0, b1);
+    }
+
+    /** Return the longest sequence of pairs {I, J} with _a[I] == _b[J],
+     *  A0 <= I < A1, B0 <= J < B1, such that the line occurs exactly once
+     *  in each range and both I and J increase along the sequence. */
+    private int[][] uniqueAnchors(int a0, int a1, int b0, int b1) {
+        HashMap<Integer, int[]> counts = new HashMap<>();
+        for (int i = a0; i < a1; i += 1) {
+            int[] c = counts.computeIfAbsent(_a[i], x -> new int[4]);
+            c[0] += 1;
+            c[1] = i;
+        }
+        for (int j = b0; j < b1; j += 1) {
+            int[] c = counts.get(_b[j]);
+            if (c != null) {
+                c[2] += 1;
+                c[3] = j;
+            }
+        }
+        ArrayList<int[]> pairs = new ArrayList<>();
+        for (int i = a0; i < a1; i += 1) {
+            int[] c = counts.get(_a[i]);
+            if (c[0] == 1 && c[2] == 1) {
+                pairs.add(new int[] { i, c[3] });
+            }
+        }
+        int[] tails = new int[pairs.size()];
+        int[] prev = new int[pairs.size()];
+        int piles = 0;
+        for (int p = 0; p < pairs.size(); p += 1) {
+            int lo = 0, hi = piles;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (pairs.get(tails[mid])[1] < pairs.get(p)[1]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            prev[p] = lo == 0 ? -1 : tails[lo - 1];
+            tails[lo] = p;
+            if (lo == piles) {
+                piles += 1;
+            }
+        }
+        int[][] result = new int[piles][];
+        for (int p = piles == 0 ? -1 : tails[piles - 1], k = piles - 1;
+             p >= 0; p = prev[p], k -= 1) {
+            result[k] = pairs.get(p);
+        }
+        return result;
+    }
+
+    /** Match _a[A0 .. A1-1] against _b[B0 .. B1-1] with histogram diff. */
+    private void histogram(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+            _match[a0] = b0;
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _a[a1 - 1] == _b[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+            _match[a1] = b1;
+        }
+        if (a0 == a1 || b0 == b1) {
+            return;
+        }
+        HashMap<Integer, ArrayList<Integer>> occurrences = new HashMap<>();
+        for (int i = a0; i < a1; i += 1) {
+            occurrences.computeIfAbsent(_a[i], x -> new ArrayList<>()).add(i);
+        }
+        int bestCount = MAX_CHAIN + 1, bestLen = 0;
+        int bestA = -1, bestB = -1;
+        for (int j = b0; j < b1; j += 1) {
+            ArrayList<Integer> where = occurrences.get(_b[j]);
+            if (where == null || where.size() > bestCount) {
+                continue;
+            }
+            for (int i : where) {
+                int s = 0;
+                while (i - s > a0 && j - s > b0
+                       && _a[i - s - 1] == _b[j - s - 1]) {
+                    s += 1;
+                }
+                int e = 1;
+                while (i + e < a1 && j + e < b1 && _a[i + e] == _b[j + e]) {
+                    e += 1;
+                }
+                if (where.size() < bestCount || s + e > bestLen) {
+                    bestCount = where.size();
+                    bestLen = s + e;
+                    bestA = i - s;
+                    bestB = j - s;
+                }
+            }
+        }
+        if (bestA < 0) {
+            myers(a0, a1, b0, b1);
+            return;
+        }
+        histogram(a0, bestA, b0, bestB);
+        for (int k = 0; k < bestLen; k += 1) {
+            _match[bestA + k] = bestB + k;
+        }
+        histogram(bestA + bestLen, a1, bestB + bestLen, b1);
+    }
+
+    /** The encoded sequences being compared. */
+    private final int[] _a, _b;
+    /** For each line of _a, the line of _b it corresponds to, or -1. */
+    private final int[] _match;
+}
@@ -0,0 +1,259 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/** JDK Flight Recorder events emitted by Gitlet's commands and hot paths,
+ *  so that a slow command can be followed in JDK Mission Control on the
+ *  same timeline as garbage collection and file I/O.  Events are recorded
+ *  whenever a recording is running: one started with the --jfr option,
+ *  which covers a single command, or one started by the JVM, as with
+ *  -XX:StartFlightRecording.  While no recording is running, creating and
+ *  committing an event costs next to nothing.
+ *
+ *  Each event is used as
+ *
+ *      Events.Hash event = new Events.Hash();
+ *      event.begin();
+ *      ...
+ *      event.path = ...;
+ *      event.commit();
+ *
+ *  setting the fields that are cheap to compute, or guarded by
+ *  shouldCommit for those that are not.  The events of the frequent
+ *  storage and hashing operations are recorded without stack traces.
+ */
+class Events {
+
+    /** Creating a commit. */
+    @Name("gitlet.Commit")
+    @Label("Commit")
+    @Category({"Gitlet", "Command"})
+    static class Commit extends Event {
+        /** Id of the new commit. */
+        @Label("Commit Id")
+        String commitId;
+        /** Id of the first parent, or null for the initial commit. */
+        @Label("Parent Id")
+        String parentId;
+        /** Id of the second parent, or null. */
+        @Label("Merged Parent Id")
+        String mergedId;
+        /** The commit's message. */
+        @Label("Message")
+        String message;
+        /** Size of the serialized commit. */
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    /** Merging a branch into the current one. */
+    @Name("gitlet.Merge")
+    @Label("Merge")
+    @Category({"Gitlet", "Command"})
+    static class Merge extends Event {
+        /** The branch merged. */
+        @Label("Branch")
+        String branch;
+        /** Id of the head of the current branch. */
+        @Label("Current Id")
+        String currentId;
+        /** Id of the head of the merged branch. */
+        @Label("Given Id")
+        String givenId;
+        /** Id of the split point, or null if the merge stopped before
+         *  finding it. */
+        @Label("Split Id")
+        String splitId;
+        /** True iff some file conflicted. */
+        @Label("Conflicted")
+        boolean conflicted;
+    }
+
+    /** Checking out all the files of a commit. */
+    @Name("gitlet.Checkout")
+    @Label("Checkout")
+    @Category({"Gitlet", "Command"})
+    static class Checkout extends Event {
+        /** Id of the commit checked out. */
+        @Label("Commit Id")
+        String commitId;
+        /** Number of working files written. */
+        @Label("Files Written")
+        int written;
+        /** Number of working files deleted. */
+        @Label("Files Deleted")
+        int deleted;
+    }
+
+    /** Showing the status of the repository. */
+    @Name("gitlet.Status")
+    @Label("Status")
+    @Category({"Gitlet", "Command"})
+    static class Status extends Event {
+        /** The current branch. */
+        @Label("Branch")
+        String branch;
+        /** Id of the head of the current branch. */
+        @Label("Commit Id")
+        String commitId;
+        /** Number of tracked working files. */
+        @Label("Tracked Files")
+        int tracked;
+        /** Number of files modified or deleted but not staged. */
+        @Label("Modified Files")
+        int modified;
+        /** Number of untracked working files. */
+        @Label("Untracked Files")
+        int untracked;
+    }
+
+    /** Reading an object, from the object store or from its own file. */
+    @Name("gitlet.ObjectRead")
+    @Label("Object Read")
+    @Category({"Gitlet", "Storage"})
+    @StackTrace(false)
+    static class ObjectRead extends Event {
+        /** Id of the object, if read from the object store. */
+        @Label("Object Id")
+        String id;
+        /** The file read, if the object has its own file. */
+        @Label("Path")
+        String path;
+        /** Size of the object's contents, or of its file. */
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    /** Writing an object, to the object store or to its own file. */
+    @Name("gitlet.ObjectWrite")
+    @Label("Object Write")
+    @Category({"Gitlet", "Storage"})
+    @StackTrace(false)
+    static class ObjectWrite extends Event {
+        /** Id of the object, if added to the object store. */
+        @Label("Object Id")
+        String id;
+        /** The file written, if the object has its own file. */
+        @Label("Path")
+        String path;
+        /** Size of the object's contents before encoding. */
+        @Label("Size")
+        @DataAmount
+        long bytes;
+        /** True iff the object was stored as a delta. */
+        @Label("Delta")
+        boolean delta;
+    }
+
+    /** Hashing a working file. */
+    @Name("gitlet.Hash")
+    @Label("Hash File")
+    @Category({"Gitlet", "Working Files"})
+    @StackTrace(false)
+    static class Hash extends Event {
+        /** The file hashed. */
+        @Label("Path")
+        String path;
+        /** Size of the file. */
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    /** Comparing two sequences of lines. */
+    @Name("gitlet.Diff")
+    @Label("Diff")
+    @Category({"Gitlet", "Working Files"})
+    @Description("Computing the differences between two files")
+    static class Diff extends Event {
+        /** Lines in the first sequence. */
+        @Label("Lines 1")
+        int lines1;
+        /** Lines in the second sequence. */
+        @Label("Lines 2")
+        int lines2;
+        /** Number of differing regions found. */
+        @Label("Hunks")
+        int hunks;
+        /** The algorithm used. */
+        @Label("Algorithm")
+        String algorithm;
+    }
+
+    /** Return the file to which commands are recorded, or null if they
+     *  are not. */
+    static File recordingFile() {
+        return _file;
+    }
+
+    /** Record each following command to FILE, replacing the recording of
+     *  the one before, or stop recording commands if FILE is null. */
+    static void setRecordingFile(File file) {
+        _file = file;
+    }
+
+    /** Start recording, with the JDK's default settings, if commands are
+     *  being recorded. */
+    static void begin() {
+        if (_file == null || _recording != null) {
+            return;
+        }
+        try {
+            _recording = new Recording(Configuration.getConfiguration(
+                "default"));
+        } catch (IOException | ParseException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _recording.enable(Commit.class);
+        _recording.enable(Merge.class);
+        _recording.enable(Checkout.class);
+        _recording.enable(Status.class);
+        _recording.enable(ObjectRead.class);
+        _recording.enable(ObjectWrite.class);
+        _recording.enable(Hash.class);
+        _recording.enable(Diff.class);
+        _recording.setToDisk(true);
+        _recording.start();
+    }
+
+    /** Stop the recording started by begin, if any, and write it to the
+     *  recording file. */
+    static void end() {
+        if (_recording == null) {
+            return;
+        }
+        Recording recording = _recording;
+        _recording = null;
+        try {
+            recording.stop();
+            recording.dump(_file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            recording.close();
+        }
+    }
+
+    /** Name of the recording file written by a --jfr option that does
+     *  not give one. */
+    static final String DEFAULT_FILE = "gitlet.jfr";
+
+    /** File to which commands are recorded, or null. */
+    private static File _file;
+    /** The recording of the current command, or null. */
+    private static Recording _recording;
+}
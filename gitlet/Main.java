@@ -2,8 +2,14 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Aayush Gupta
@@ -13,21 +19,36 @@ public class Main {
     /** List of all possible Gitlet commands. */
     private static final List<String> COMMANDS = Arrays.asList("init", "add",
             "commit", "rm", "log", "global-log", "find", "status", "checkout",
-            "branch", "rm-branch", "reset", "merge", "diffs");
+            "branch", "rm-branch", "reset", "merge", "diffs", "gc");
+    /** Formats accepted for the dates of global-log options. */
+    private static final List<String> DATE_FORMATS = List.of(
+            "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "yyyy-MM-dd",
+            "EEE MMM d HH:mm:ss yyyy Z");
+    /** Report formats of the Stats selected by each --stats option. */
+    private static final Map<String, String> STATS_FORMATS = Map.of(
+            "--stats", "text", "--stats=text", "text", "--stats=json", "json");
     /** Represents the repo object. */
     private static Repository _repo;
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
+        args = globalOptions(args);
         File cwd = new File(System.getProperty("user.dir"));
-        File repoDir = Utils.join(cwd, ".gitlet", "repository");
-        if (repoDir.exists()) {
-            _repo = Utils.readObject(repoDir, Repository.class);
-        } else {
-            _repo = new Repository();
+        if (args.length > 0 && Shell.COMMANDS.contains(args[0])) {
+            Shell.main(cwd, args);
+            return;
         }
+        run(Repository.load(cwd), cwd, args);
+    }
 
+    /** Runs the command ARGS on REPO, whose working directory is CWD, and
+     *  saves REPO afterwards. */
+    static void run(Repository repo, File cwd, String[] args)
+        throws IOException {
+        _repo = repo;
+        Events.begin();
+        Stats.begin(args.length == 0 ? "" : args[0]);
         if (args.length == 0) {
             Main.exitWithMessage("Please enter a command.");
         }
@@ -64,9 +85,7 @@ public class Main {
                 Main.exitWithMessage("Incorrect operands.");
             }
         } else if (args[0].equals("global-log")) {
-            if (args.length == 1) {
-                _repo.globalLog();
-            }
+            globalLog(args);
         } else if (args[0].equals("reset")) {
             if (args.length == 2) {
                 _repo.reset(args[1]);
@@ -74,13 +93,56 @@ public class Main {
         } else {
             mainPart2(args);
         }
-        _repo.serialize();
+        flushStores();
+        _repo.save();
+        Transaction.commit();
+        Stats.end();
+        Events.end();
+    }
+
+    /** Applies the options that precede the command in ARGS and returns
+     *  the rest.  These options are --durability=MODE, where MODE is none,
+     *  batch or full, selecting the Transaction.Mode; --stats, which
+     *  prints the command's Stats to the standard error as a summary, or
+     *  as JSON with --stats=json; and --jfr=FILE, which records the
+     *  command's Events to FILE, or to Events.DEFAULT_FILE with --jfr. */
+    static String[] globalOptions(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            String jfr = "--jfr=";
+            String durability = "--durability=";
+            if (STATS_FORMATS.containsKey(args[k])) {
+                Stats.setFormat(STATS_FORMATS.get(args[k]));
+            } else if (args[k].equals("--jfr")) {
+                Events.setRecordingFile(new File(Events.DEFAULT_FILE));
+            } else if (args[k].startsWith(jfr)
+                       && args[k].length() > jfr.length()) {
+                Events.setRecordingFile(
+                    new File(args[k].substring(jfr.length())));
+            } else {
+                Transaction.Mode mode = args[k].startsWith(durability)
+                    ? Transaction.Mode.named(
+                        args[k].substring(durability.length()))
+                    : null;
+                if (mode == null) {
+                    Main.exitWithMessage("Incorrect operands.");
+                }
+                Transaction.setMode(mode);
+            }
+        }
+        return Arrays.copyOfRange(args, k, args.length);
     }
 
     private static void mainPart2(String[] args) throws IOException {
         if (args[0].equals("find")) {
             if (args.length == 2) {
                 _repo.find(args[1]);
+            } else if (args.length == 3 && args[1].equals("--word")) {
+                _repo.findWords(args[2]);
+            } else if (args.length == 3 && args[1].equals("--grep")) {
+                _repo.findSubstring(args[2]);
+            } else {
+                Main.exitWithMessage("Incorrect operands.");
             }
         } else if (args[0].equals("status")) {
             if (args.length == 1) {
@@ -98,13 +160,18 @@ public class Main {
             if (args.length == 2) {
                 _repo.merge(args[1]);
             }
+        } else if (args[0].equals("gc")) {
+            gc(args);
         } else if (args[0].equals("diff")) {
-            if (args.length == 1) {
+            List<String> operands = diffOperands(args);
+            if (operands.size() == 0) {
                 _repo.diff(_repo.getCurBranch());
-            } else if (args.length == 2) {
-                _repo.diff(args[1]);
+            } else if (operands.size() == 1) {
+                _repo.diff(operands.get(0));
+            } else if (operands.size() == 2) {
+                _repo.diff(operands.get(0), operands.get(1));
             } else {
-                _repo.diff(args[1], args[2]);
+                Main.exitWithMessage("Incorrect operands.");
             }
         } else if (!COMMANDS.contains(args[0])) {
             Main.exitWithMessage("No command with that name exists.");
@@ -113,8 +180,125 @@ public class Main {
         }
     }
 
+    /** Applies the options in ARGS, the arguments of a diff command, and
+     *  returns its remaining operands.  The options are --patience,
+     *  --histogram, --myers and --algorithm=NAME, selecting the algorithm
+     *  used to match lines, which is otherwise Myers'. */
+    private static List<String> diffOperands(String[] args) {
+        List<String> operands = new ArrayList<>();
+        _repo.setDiffAlgorithm(DiffEngine.Algorithm.MYERS);
+        for (String arg : Arrays.asList(args).subList(1, args.length)) {
+            if (!arg.startsWith("--")) {
+                operands.add(arg);
+                continue;
+            }
+            String name = arg.substring(2);
+            if (name.startsWith("algorithm=")) {
+                name = name.substring("algorithm=".length());
+            }
+            DiffEngine.Algorithm algorithm = DiffEngine.Algorithm.named(name);
+            if (algorithm == null) {
+                Main.exitWithMessage("Incorrect operands.");
+            }
+            _repo.setDiffAlgorithm(algorithm);
+        }
+        return operands;
+    }
+
+    /** Runs global-log with the options in ARGS: --max-count=N,
+     *  --skip=N, --since=DATE and --until=DATE, where DATE is in the
+     *  form yyyy-MM-dd, optionally followed by HH:mm or HH:mm:ss, in the
+     *  local time zone, or in the form commits show their dates in. */
+    private static void globalLog(String[] args) {
+        int maxCount = Integer.MAX_VALUE, skip = 0;
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        for (String arg : Arrays.asList(args).subList(1, args.length)) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? null : arg.substring(eq + 1);
+            if (value == null) {
+                Main.exitWithMessage("Incorrect operands.");
+            } else if (name.equals("--max-count")) {
+                maxCount = count(value);
+            } else if (name.equals("--skip")) {
+                skip = count(value);
+            } else if (name.equals("--since")) {
+                since = date(value);
+            } else if (name.equals("--until")) {
+                until = date(value);
+            } else {
+                Main.exitWithMessage("Incorrect operands.");
+            }
+        }
+        _repo.globalLog(maxCount, skip, since, until);
+    }
+
+    /** Runs gc with the option in ARGS, if any: --grace=DAYS, the number
+     *  of days for which unreachable commits are kept, which is otherwise
+     *  Repository.DEFAULT_GC_GRACE_DAYS. */
+    private static void gc(String[] args) throws IOException {
+        long days = Repository.DEFAULT_GC_GRACE_DAYS;
+        String grace = "--grace=";
+        if (args.length > 2
+                || (args.length == 2 && !args[1].startsWith(grace))) {
+            Main.exitWithMessage("Incorrect operands.");
+        } else if (args.length == 2) {
+            days = count(args[1].substring(grace.length()));
+        }
+        _repo.gc(TimeUnit.DAYS.toMillis(days));
+    }
+
+    /** Returns the non-negative count written as TEXT, or exits with an
+     *  error if it is not one. */
+    private static int count(String text) {
+        try {
+            int n = Integer.parseInt(text);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        Main.exitWithMessage("Incorrect operands.");
+        return 0;
+    }
+
+    /** Returns the time, in milliseconds since the epoch, written as
+     *  TEXT in one of DATE_FORMATS, or exits with an error if it is in
+     *  none of them. */
+    private static long date(String text) {
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat parser = new SimpleDateFormat(format);
+            parser.setLenient(false);
+            ParsePosition pos = new ParsePosition(0);
+            Date result = parser.parse(text, pos);
+            if (result != null && pos.getIndex() == text.length()) {
+                return result.getTime();
+            }
+        }
+        Main.exitWithMessage("Incorrect operands.");
+        return 0;
+    }
+
+    /** Print MESSAGE and exit without saving the repository.  Objects
+     *  already stored and refs already written are kept.  While a Shell
+     *  runs the command, ends only the command, by throwing Shell.Exit. */
     public static void exitWithMessage(String message) {
         System.out.println(message);
+        flushStores();
+        Transaction.commit();
+        Stats.end();
+        Events.end();
+        if (Shell.active()) {
+            throw new Shell.Exit();
+        }
         System.exit(0);
     }
+
+    /** Make objects and cached file ids recorded during this command
+     *  permanent. */
+    private static void flushStores() {
+        ObjectStore.flushAll();
+        StatCache.flushAll();
+    }
 }
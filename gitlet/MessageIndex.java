@@ -0,0 +1,585 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/** The messages of all commits, kept in .gitlet/messages so that commits
+ *  can be found by message without reading any commit.  The file is a
+ *  magic number, a version and a record count, followed by one record per
+ *  commit (its binary id and its message as a length-prefixed UTF-8
+ *  string), appended as commits are made.
+ *
+ *  Beside it, .gitlet/messages-index holds an open-addressing hash table
+ *  whose keys are the hashes of each exact message and of each word (a
+ *  maximal run of letters and digits, ignoring case) of the messages.
+ *  Each slot holds a key and the head of its posting list, a chain of
+ *  (record offset, next entry) pairs appended after the table, newest
+ *  first.  The table's header records how far into the log it reaches,
+ *  and each new record is added to it as it is appended, so a lookup
+ *  reads one chain of slots, one posting list and the matching records,
+ *  however long the history.  When more than half of the slots are full,
+ *  the table is copied into one twice as large.
+ */
+class MessageIndex {
+
+    /** Magic number at the start of the file ("GMSG"). */
+    static final int MAGIC = 0x474d5347;
+    /** Current version of the file format. */
+    static final int VERSION = 1;
+    /** Size of the file header. */
+    static final int HEADER_SIZE = 12;
+    /** Magic number at the start of the table file ("GMIX"). */
+    static final int TABLE_MAGIC = 0x474d4958;
+    /** Current version of the table file format. */
+    static final int TABLE_VERSION = 1;
+    /** Size of the table file header. */
+    static final int TABLE_HEADER_SIZE = 32 + Utils.UID_BYTES;
+    /** Size of a slot of the hash table, and of an entry of a posting
+     *  list. */
+    static final int SLOT_SIZE = 16;
+    /** Number of slots in a new table, a power of two. */
+    static final int INITIAL_SLOTS = 1024;
+    /** Kind of key under which a record is indexed by its whole message. */
+    private static final byte EXACT = 0;
+    /** Kind of key under which a record is indexed by each of its words. */
+    private static final byte WORD = 1;
+
+    /** The index kept in FILE, with its table in FILE-index, neither of
+     *  which need exist yet. */
+    MessageIndex(File file) {
+        _file = file;
+        _table = new File(file.getPath() + "-index");
+    }
+
+    /** Return the number of commits recorded, as given by the header. */
+    int size() {
+        if (_shas != null) {
+            return _shas.size();
+        }
+        if (!_file.isFile() || _file.length() < HEADER_SIZE) {
+            return 0;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            in.seek(8);
+            return in.readInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff the commit with id SHA is recorded. */
+    boolean contains(String sha) {
+        load();
+        return _known.contains(sha);
+    }
+
+    /** Record MESSAGE as the message of the commit with id SHA, unless
+     *  that commit is already recorded in the loaded records. */
+    void append(String sha, String message) {
+        if (_shas != null && _known.contains(sha)) {
+            return;
+        }
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        try (RandomAccessFile out = new RandomAccessFile(_file, "rw")) {
+            int count = 0;
+            if (out.length() < HEADER_SIZE) {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(0);
+            } else {
+                out.seek(8);
+                count = out.readInt();
+            }
+            out.seek(out.length());
+            out.write(Utils.shaToBytes(sha));
+            out.writeInt(text.length);
+            out.write(text);
+            out.seek(8);
+            out.writeInt(count + 1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.written(_file);
+        if (_shas != null) {
+            add(sha, message);
+        }
+        try {
+            openTable().close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrite the file so that it holds only the records of the commits
+     *  whose ids are in KEEP, in their present order, and forget the
+     *  loaded records. */
+    void retain(Set<String> keep) {
+        load();
+        File tmp = Transaction.temp(_file);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmp.toPath())))) {
+            int count = 0;
+            for (String sha : _shas) {
+                if (keep.contains(sha)) {
+                    count += 1;
+                }
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            for (int k = 0; k < _shas.size(); k += 1) {
+                if (keep.contains(_shas.get(k))) {
+                    byte[] text =
+                        _messages.get(k).getBytes(StandardCharsets.UTF_8);
+                    out.write(Utils.shaToBytes(_shas.get(k)));
+                    out.writeInt(text.length);
+                    out.write(text);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.install(tmp, _file);
+        _shas = null;
+        _messages = null;
+        _known = null;
+        try {
+            Files.deleteIfExists(_table.toPath());
+            openTable().close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the ids of the commits whose message is exactly MESSAGE, in
+     *  sorted order. */
+    List<String> exact(String message) {
+        return matching(List.of(key(EXACT, message)),
+                        m -> m.equals(message));
+    }
+
+    /** Return the ids of the commits whose messages contain every word of
+     *  TEXT, ignoring case, in sorted order.  TEXT must contain a word. */
+    List<String> words(String text) {
+        Set<String> words = tokens(text);
+        List<Long> keys = new ArrayList<>();
+        for (String word : words) {
+            keys.add(key(WORD, word));
+        }
+        return matching(keys, m -> tokens(m).containsAll(words));
+    }
+
+    /** Return the ids, in sorted order, of the commits whose records are
+     *  on the posting lists of all of KEYS and whose messages satisfy
+     *  TEST.  Only those records are read from the log; TEST rules out the
+     *  ones that are there only because another key has the same hash. */
+    private List<String> matching(List<Long> keys, Predicate<String> test) {
+        List<String> result = new ArrayList<>();
+        if (!_file.isFile()) {
+            return result;
+        }
+        try (RandomAccessFile table = openTable();
+             RandomAccessFile log = new RandomAccessFile(_file, "r")) {
+            Set<Long> records = null;
+            for (long key : keys) {
+                Set<Long> posting = postings(table, key);
+                if (records == null) {
+                    records = posting;
+                } else {
+                    records.retainAll(posting);
+                }
+            }
+            byte[] id = new byte[Utils.UID_BYTES];
+            for (long record : records) {
+                log.seek(record);
+                log.readFully(id);
+                byte[] text = new byte[log.readInt()];
+                log.readFully(text);
+                if (test.test(new String(text, StandardCharsets.UTF_8))) {
+                    result.add(Utils.bytesToSha(id, 0));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the ids of the commits whose messages contain the string
+     *  TEXT, in sorted order. */
+    List<String> grep(String text) {
+        load();
+        List<Integer> result = new ArrayList<>();
+        for (int k = 0; k < _messages.size(); k += 1) {
+            if (_messages.get(k).contains(text)) {
+                result.add(k);
+            }
+        }
+        return ids(result);
+    }
+
+    /** Return the words of TEXT, in lower case, in order of first
+     *  appearance and without duplicates. */
+    static Set<String> tokens(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i += 1) {
+            boolean inWord = i < text.length()
+                && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the ids of the records numbered in RECORDS, sorted. */
+    private List<String> ids(List<Integer> records) {
+        List<String> result = new ArrayList<>();
+        for (int k : records) {
+            result.add(_shas.get(k));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Read the records, if not already done. */
+    private void load() {
+        if (_shas != null) {
+            return;
+        }
+        _shas = new ArrayList<>();
+        _messages = new ArrayList<>();
+        _known = new HashSet<>();
+        if (!_file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(
+                     _file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("corrupt message index");
+            }
+            int version = in.readInt();
+            if (version > VERSION) {
+                throw Utils.error("message index version %d is newer than "
+                                  + "this Gitlet supports", version);
+            }
+            in.readInt();
+            byte[] id = new byte[Utils.UID_BYTES];
+            while (true) {
+                try {
+                    in.readFully(id);
+                } catch (EOFException excp) {
+                    break;
+                }
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                add(Utils.bytesToSha(id, 0),
+                    new String(text, StandardCharsets.UTF_8));
+            }
+        } catch (EOFException excp) {
+            return;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Add the record of commit SHA with message MESSAGE to the loaded
+     *  records. */
+    private void add(String sha, String message) {
+        if (!_known.add(sha)) {
+            return;
+        }
+        _shas.add(sha);
+        _messages.add(message);
+    }
+
+    /** Return the keys under which a record with MESSAGE is indexed: the
+     *  message itself and each of its words. */
+    private static List<Long> keys(String message) {
+        List<Long> result = new ArrayList<>();
+        result.add(key(EXACT, message));
+        for (String word : tokens(message)) {
+            result.add(key(WORD, word));
+        }
+        return result;
+    }
+
+    /** Return the key of TEXT as a key of kind KIND (EXACT or WORD): the
+     *  64-bit FNV-1a hash of KIND and the UTF-8 bytes of TEXT, which is
+     *  never 0, the mark of an empty slot. */
+    private static long key(byte kind, String text) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ kind) * 0x100000001b3L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /** Open the table, bring it up to date with the log and return it.
+     *  The table is created if it is missing, and built again if it is
+     *  from another version or does not describe the records now in the
+     *  log, as after retain. */
+    private RandomAccessFile openTable() throws IOException {
+        RandomAccessFile table = new RandomAccessFile(_table, "rw");
+        long end = indexedEnd(table);
+        if (end < 0) {
+            _slots = INITIAL_SLOTS;
+            _keys = 0;
+            end = HEADER_SIZE;
+            table.setLength(0);
+            table.write(tableHeader(end, -1, new byte[Utils.UID_BYTES]));
+            table.write(new byte[_slots * SLOT_SIZE]);
+            Transaction.written(_table);
+        }
+        if (end < _file.length()) {
+            table = indexFrom(table, end);
+            Transaction.written(_table);
+        }
+        return table;
+    }
+
+    /** Return the offset in the log up to which TABLE has indexed the
+     *  records, setting _slots and _keys from its header, or -1 if TABLE
+     *  is empty, is from another version, or does not describe the log:
+     *  the last record it indexed must still be in the log with the same
+     *  id and where it was. */
+    private long indexedEnd(RandomAccessFile table) throws IOException {
+        if (table.length() < TABLE_HEADER_SIZE) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(TABLE_HEADER_SIZE);
+        table.seek(0);
+        table.readFully(header.array());
+        if (header.getInt() != TABLE_MAGIC
+            || header.getInt() != TABLE_VERSION) {
+            return -1;
+        }
+        _slots = header.getInt();
+        _keys = header.getInt();
+        long end = header.getLong(), last = header.getLong();
+        byte[] id = new byte[Utils.UID_BYTES];
+        header.get(id);
+        if (last < 0) {
+            return end == HEADER_SIZE ? end : -1;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(_file, "r")) {
+            if (end > log.length() || last + Utils.UID_BYTES + 4 > end) {
+                return -1;
+            }
+            byte[] logId = new byte[Utils.UID_BYTES];
+            log.seek(last);
+            log.readFully(logId);
+            long next = last + Utils.UID_BYTES + 4 + log.readInt();
+            return Arrays.equals(id, logId) && next == end ? end : -1;
+        }
+    }
+
+    /** Return the header of a table with _slots slots and _keys keys that
+     *  has indexed the records before offset END of the log, the last of
+     *  them at offset LAST with binary id ID. */
+    private byte[] tableHeader(long end, long last, byte[] id) {
+        ByteBuffer header = ByteBuffer.allocate(TABLE_HEADER_SIZE);
+        header.putInt(TABLE_MAGIC).putInt(TABLE_VERSION).putInt(_slots)
+            .putInt(_keys).putLong(end).putLong(last).put(id);
+        return header.array();
+    }
+
+    /** Add the records of the log from offset START on to TABLE, and
+     *  return TABLE, or the table that replaced it if it had to grow.  The
+     *  header is updated after each record, so that a table left behind
+     *  by a crash takes up where it stopped. */
+    private RandomAccessFile indexFrom(RandomAccessFile table, long start)
+        throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(
+                     _file.toPath())))) {
+            in.skipNBytes(start);
+            byte[] id = new byte[Utils.UID_BYTES];
+            long record = start;
+            while (true) {
+                try {
+                    in.readFully(id);
+                } catch (EOFException excp) {
+                    break;
+                }
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                List<Long> keys =
+                    keys(new String(text, StandardCharsets.UTF_8));
+                while (2 * (_keys + keys.size()) > _slots) {
+                    table = grow(table);
+                }
+                for (long key : keys) {
+                    addPosting(table, key, record);
+                }
+                long next = record + Utils.UID_BYTES + 4 + text.length;
+                table.seek(0);
+                table.write(tableHeader(next, record, id));
+                record = next;
+            }
+        } catch (EOFException excp) {
+            return table;
+        }
+        return table;
+    }
+
+    /** Add the record at offset RECORD of the log to the posting list of
+     *  KEY in TABLE. */
+    private void addPosting(RandomAccessFile table, long key, long record)
+        throws IOException {
+        long slot = slot(table, key);
+        long[] entry = readPair(table, slot);
+        long head = -1;
+        if (entry[0] == 0) {
+            _keys += 1;
+        } else {
+            head = entry[1];
+        }
+        long pos = table.length();
+        writePair(table, pos, record, head);
+        writePair(table, slot, key, pos - postingsStart());
+    }
+
+    /** Return the offsets in the log of the records on the posting list
+     *  of KEY in TABLE. */
+    private Set<Long> postings(RandomAccessFile table, long key)
+        throws IOException {
+        Set<Long> result = new HashSet<>();
+        long[] entry = readPair(table, slot(table, key));
+        if (entry[0] == 0) {
+            return result;
+        }
+        for (long pos = entry[1]; pos >= 0; ) {
+            long[] posting = readPair(table, postingsStart() + pos);
+            result.add(posting[0]);
+            pos = posting[1];
+        }
+        return result;
+    }
+
+    /** Return the offset in TABLE of the slot holding KEY, or of the empty
+     *  slot where it would go. */
+    private long slot(RandomAccessFile table, long key) throws IOException {
+        for (int i = firstSlot(key, _slots); true; i = (i + 1) % _slots) {
+            long pos = TABLE_HEADER_SIZE + (long) i * SLOT_SIZE;
+            long found = readPair(table, pos)[0];
+            if (found == key || found == 0) {
+                return pos;
+            }
+        }
+    }
+
+    /** Return the slot at which to start looking for KEY in a table with
+     *  SLOTS slots, a power of two. */
+    private static int firstSlot(long key, int slots) {
+        return (int) ((key ^ (key >>> 32)) & (slots - 1));
+    }
+
+    /** Return the offset in the table of its posting lists. */
+    private long postingsStart() {
+        return TABLE_HEADER_SIZE + (long) _slots * SLOT_SIZE;
+    }
+
+    /** Replace TABLE, which is closed, with a copy that has twice as many
+     *  slots, and return the copy.  Posting lists are copied unchanged,
+     *  since the slots refer to them relative to their start. */
+    private RandomAccessFile grow(RandomAccessFile table) throws IOException {
+        int slots = 2 * _slots;
+        ByteBuffer old = ByteBuffer.allocate(_slots * SLOT_SIZE);
+        table.seek(TABLE_HEADER_SIZE);
+        table.readFully(old.array());
+        ByteBuffer slotData = ByteBuffer.allocate(slots * SLOT_SIZE);
+        for (int k = 0; k < _slots; k += 1) {
+            long key = old.getLong(), head = old.getLong();
+            if (key != 0) {
+                int i = firstSlot(key, slots);
+                while (slotData.getLong(i * SLOT_SIZE) != 0) {
+                    i = (i + 1) % slots;
+                }
+                slotData.putLong(i * SLOT_SIZE, key);
+                slotData.putLong(i * SLOT_SIZE + 8, head);
+            }
+        }
+        byte[] header = new byte[TABLE_HEADER_SIZE];
+        table.seek(0);
+        table.readFully(header);
+        ByteBuffer.wrap(header).putInt(8, slots);
+        File tmp = Transaction.temp(_table);
+        try (OutputStream out = new BufferedOutputStream(
+                 Files.newOutputStream(tmp.toPath()))) {
+            out.write(header);
+            out.write(slotData.array());
+            table.seek(postingsStart());
+            byte[] buf = new byte[1 << 16];
+            for (int n = table.read(buf); n > 0; n = table.read(buf)) {
+                out.write(buf, 0, n);
+            }
+        }
+        table.close();
+        Transaction.install(tmp, _table);
+        _slots = slots;
+        return new RandomAccessFile(_table, "rw");
+    }
+
+    /** Return the two longs at offset POS of TABLE. */
+    private static long[] readPair(RandomAccessFile table, long pos)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SLOT_SIZE);
+        table.seek(pos);
+        table.readFully(buf.array());
+        return new long[] { buf.getLong(), buf.getLong() };
+    }
+
+    /** Write FIRST and SECOND at offset POS of TABLE. */
+    private static void writePair(RandomAccessFile table, long pos,
+                                  long first, long second)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SLOT_SIZE);
+        buf.putLong(first).putLong(second);
+        table.seek(pos);
+        table.write(buf.array());
+    }
+
+    /** The file of records. */
+    private final File _file;
+    /** Ids of the recorded commits, by record number, once loaded. */
+    private ArrayList<String> _shas;
+    /** Messages of the recorded commits, by record number, once loaded. */
+    private ArrayList<String> _messages;
+    /** Ids of the recorded commits, once loaded. */
+    private HashSet<String> _known;
+    /** The file holding the hash table and posting lists. */
+    private final File _table;
+    /** Number of slots in the open table. */
+    private int _slots;
+    /** Number of keys in the open table. */
+    private int _keys;
+}
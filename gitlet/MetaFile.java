@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The file .gitlet/meta, which holds the repository state that is not
+ *  kept in objects or refs.  The state is divided into independently
+ *  readable sections, each identified by a one-byte tag, so that a
+ *  command reads only the sections it uses.
+ *
+ *  The file starts with a magic number, a format version and a table
+ *  giving the tag, offset and length of each section.  Readers skip
+ *  sections whose tags they do not know, so sections can be added
+ *  without changing the version; the version changes only when the
+ *  layout of an existing section does.
+ */
+class MetaFile {
+
+    /** Magic number at the start of the file ("GMET"). */
+    static final int MAGIC = 0x474d4554;
+    /** Current version of the file format. */
+    static final int VERSION = 1;
+    /** Tag of the section holding the current branch and flags. */
+    static final byte CORE = 1;
+    /** Tag of the section holding the staging areas. */
+    static final byte STAGING = 2;
+    /** Tag of the section holding the table of all commits. */
+    static final byte COMMITS = 3;
+
+    /** The meta file FILE, which need not exist yet. */
+    MetaFile(File file) {
+        _file = file;
+    }
+
+    /** Return true iff the file exists. */
+    boolean exists() {
+        return _file.isFile();
+    }
+
+    /** Return the format version of the file. */
+    int version() {
+        readTable();
+        return _version;
+    }
+
+    /** Return a stream over the contents of the section tagged TAG, or null
+     *  if the file has no such section. */
+    DataInputStream section(byte tag) {
+        byte[] data = sectionBytes(tag);
+        if (data == null) {
+            return null;
+        }
+        return new DataInputStream(new ByteArrayInputStream(data));
+    }
+
+    /** Return the contents of the section tagged TAG, or null if the file
+     *  has no such section. */
+    byte[] sectionBytes(byte tag) {
+        if (!exists()) {
+            return null;
+        }
+        readTable();
+        long[] place = _table.get(tag);
+        if (place == null) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            byte[] data = new byte[(int) place[1]];
+            in.seek(place[0]);
+            in.readFully(data);
+            return data;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Replace the file, as part of the current Transaction, with one
+     *  holding SECTIONS, a map from tags to section contents, in the
+     *  current format version. */
+    void write(Map<Byte, byte[]> sections) {
+        File tmp = Transaction.temp(_file);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sections.size());
+            long offset = 12 + 13L * sections.size();
+            for (Map.Entry<Byte, byte[]> e : sections.entrySet()) {
+                out.writeByte(e.getKey());
+                out.writeLong(offset);
+                out.writeInt(e.getValue().length);
+                offset += e.getValue().length;
+            }
+            for (byte[] data : sections.values()) {
+                out.write(data);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.install(tmp, _file);
+        _table = null;
+    }
+
+    /** Read the header and section table, if not already done. */
+    private void readTable() {
+        if (_table != null) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 Files.newInputStream(_file.toPath()))) {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("corrupt repository metadata");
+            }
+            _version = in.readInt();
+            if (_version > VERSION) {
+                throw Utils.error("repository metadata version %d is newer "
+                                  + "than this Gitlet supports", _version);
+            }
+            _table = new HashMap<>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                byte tag = in.readByte();
+                _table.put(tag, new long[] { in.readLong(), in.readInt() });
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The file. */
+    private final File _file;
+    /** Format version of the file, once read. */
+    private int _version;
+    /** Offset and length of each section, by tag, or null if the table has
+     *  not been read. */
+    private HashMap<Byte, long[]> _table;
+}
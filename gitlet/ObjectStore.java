@@ -0,0 +1,534 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Content-addressed storage for blobs, keyed by SHA-1 id.  New objects
+ *  are appended to pack files under the pack subdirectory of the object
+ *  directory (see PackFile); objects stored one per file directly in the
+ *  object directory by earlier versions of Gitlet are still found there.
+ *  There is one store per object directory, shared by everything that
+ *  reads or writes it during a command.
+ *
+ *  A new revision of a file may be stored as a delta against the previous
+ *  revision (see Delta) when that is much smaller than the revision
+ *  itself.  Reading such an object means reading its chain of bases, so
+ *  chains are limited to MAX_DELTA_DEPTH deltas, and recently
+ *  reconstructed bases are kept in a cache bounded by BASE_CACHE_BYTES.
+ *  Objects in packs are compressed (see Compression).  Objects are never
+ *  removed, except by repack, which rewrites the store with only the
+ *  objects still wanted.
+ *
+ *  A store may be used from several threads.  Its methods hold the
+ *  store's lock while they touch its packs, but the streams returned by
+ *  stream decode outside it.
+ */
+class ObjectStore {
+
+    /** Size beyond which a pack is no longer appended to. */
+    static final long MAX_PACK_SIZE = 64L << 20;
+    /** Maximum number of deltas between an object and a complete blob. */
+    static final int MAX_DELTA_DEPTH = 10;
+    /** Objects smaller than this are always stored complete. */
+    static final int MIN_DELTA_SIZE = 512;
+    /** Files at least this large are streamed into a pack rather than
+     *  read into memory, and are never stored as deltas. */
+    static final long STREAM_PUT_SIZE = 16L << 20;
+    /** Total size of the delta bases kept in memory. */
+    static final long BASE_CACHE_BYTES = 32L << 20;
+
+    /** Return the store for the object directory DIR. */
+    static synchronized ObjectStore open(File dir) {
+        ObjectStore store = STORES.get(dir);
+        if (store == null) {
+            store = new ObjectStore(dir);
+            STORES.put(dir, store);
+        }
+        return store;
+    }
+
+    /** Flush every store opened during this command. */
+    static void flushAll() {
+        for (ObjectStore store : STORES.values()) {
+            store.flush();
+        }
+    }
+
+    /** Flush and forget every open store, so that stores are opened anew
+     *  when next used. */
+    static synchronized void closeAll() {
+        flushAll();
+        STORES.clear();
+    }
+
+    /** A store whose objects live in DIR. */
+    private ObjectStore(File dir) {
+        _dir = dir;
+        _packDir = Utils.join(dir, "pack");
+        _packs = new ArrayList<>();
+        String[] names = _packDir.list();
+        if (names != null) {
+            Arrays.sort(names);
+            for (String name : names) {
+                if (name.endsWith(".pack")) {
+                    _packs.add(new PackFile(Utils.join(_packDir, name)));
+                    _nextPack = Integer.parseInt(name.substring(
+                        "pack-".length(), name.indexOf('.'))) + 1;
+                }
+            }
+        }
+    }
+
+    /** Return true iff the object with id SHA is in this store. */
+    synchronized boolean contains(String sha) {
+        return findPack(sha) != null || loose(sha).isFile();
+    }
+
+    /** Store CONTENTS as the object with id SHA, unless already present. */
+    synchronized void put(String sha, byte[] contents) {
+        if (!contains(sha)) {
+            Events.ObjectWrite event = new Events.ObjectWrite();
+            event.begin();
+            long start = Stats.start();
+            activePack().append(sha, contents);
+            Stats.count(Stats.Counter.OBJECT_WRITES);
+            Stats.count(Stats.Counter.OBJECT_BYTES_WRITTEN, contents.length);
+            Stats.stop(Stats.Timer.OBJECT_WRITE, start);
+            event.id = sha;
+            event.bytes = contents.length;
+            event.commit();
+        }
+    }
+
+    /** Store the contents of the file SOURCE as the object with id SHA,
+     *  unless already present. */
+    synchronized void put(String sha, File source) {
+        put(sha, source, null);
+    }
+
+    /** Store the contents of the file SOURCE as the object with id SHA,
+     *  unless already present, as a delta against the object with id
+     *  BASESHA if BASESHA is not null and that is worthwhile.  Files of at
+     *  least STREAM_PUT_SIZE bytes, which may be larger than any array,
+     *  are streamed into the pack complete. */
+    synchronized void put(String sha, File source, String baseSha) {
+        if (contains(sha)) {
+            return;
+        }
+        Events.ObjectWrite event = new Events.ObjectWrite();
+        event.begin();
+        long start = Stats.start();
+        if (source.length() >= STREAM_PUT_SIZE) {
+            event.id = sha;
+            event.bytes = source.length();
+            activePack().append(sha, source);
+            Stats.count(Stats.Counter.OBJECT_WRITES);
+            Stats.count(Stats.Counter.OBJECT_BYTES_WRITTEN, event.bytes);
+            Stats.stop(Stats.Timer.OBJECT_WRITE, start);
+            event.commit();
+            return;
+        }
+        byte[] contents = Utils.readContents(source);
+        event.id = sha;
+        event.bytes = contents.length;
+        Stats.count(Stats.Counter.OBJECT_WRITES);
+        Stats.count(Stats.Counter.OBJECT_BYTES_WRITTEN, contents.length);
+        if (baseSha != null && !baseSha.equals(sha)
+            && contents.length >= MIN_DELTA_SIZE && contains(baseSha)
+            && !streamed(baseSha) && depth(baseSha) < MAX_DELTA_DEPTH) {
+            byte[] delta = Delta.encode(read(baseSha), contents);
+            if (delta.length + Utils.UID_BYTES < contents.length / 2) {
+                activePack().appendDelta(sha, baseSha, delta);
+                Stats.count(Stats.Counter.DELTAS_WRITTEN);
+                Stats.stop(Stats.Timer.OBJECT_WRITE, start);
+                event.delta = true;
+                event.commit();
+                return;
+            }
+        }
+        activePack().append(sha, contents);
+        Stats.stop(Stats.Timer.OBJECT_WRITE, start);
+        event.commit();
+    }
+
+    /** Return the contents of the object with id SHA.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    synchronized byte[] read(String sha) {
+        Events.ObjectRead event = new Events.ObjectRead();
+        event.begin();
+        long start = Stats.start();
+        byte[] contents = load(sha);
+        Stats.count(Stats.Counter.OBJECT_READS);
+        Stats.count(Stats.Counter.OBJECT_BYTES_READ, contents.length);
+        Stats.stop(Stats.Timer.OBJECT_READ, start);
+        event.id = sha;
+        event.bytes = contents.length;
+        event.commit();
+        return contents;
+    }
+
+    /** Return the contents of the object with id SHA, as for read, but
+     *  without counting them in the Stats. */
+    private byte[] load(String sha) {
+        byte[] cached = _bases.get(sha);
+        if (cached != null) {
+            Stats.count(Stats.Counter.DELTA_BASE_HITS);
+            return cached;
+        }
+        PackFile pack = findPack(sha);
+        if (pack != null) {
+            PackFile.Entry entry = pack.read(sha);
+            if (entry.kind == PackFile.BLOB) {
+                return entry.contents();
+            }
+            String baseSha = entry.base();
+            byte[] base = load(baseSha);
+            cacheBase(baseSha, base);
+            return Delta.apply(base, entry.contents());
+        }
+        File file = loose(sha);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("no object " + sha);
+        }
+        return Utils.readContents(file);
+    }
+
+    /** Return the number of deltas that must be applied to reconstruct
+     *  the object with id SHA. */
+    synchronized int depth(String sha) {
+        int depth = 0;
+        PackFile pack = findPack(sha);
+        while (pack != null && (sha = pack.deltaBase(sha)) != null) {
+            depth += 1;
+            pack = findPack(sha);
+        }
+        return depth;
+    }
+
+    /** Return true iff the object with id SHA is a complete blob in a pack
+     *  of at least STREAM_PUT_SIZE bytes, too large to be used as the base
+     *  of a delta. */
+    private boolean streamed(String sha) {
+        PackFile pack = findPack(sha);
+        PackFile.Blob blob = pack == null ? null : pack.blob(sha);
+        return blob != null && blob.size >= STREAM_PUT_SIZE;
+    }
+
+    /** Return a stream over the contents of the object with id SHA.  The
+     *  contents of a complete blob are read from its pack, and decoded, as
+     *  the stream is read; those of a delta are reconstructed in memory
+     *  first.  Throws IllegalArgumentException if there is no such
+     *  object. */
+    synchronized InputStream stream(String sha) {
+        Stats.count(Stats.Counter.OBJECT_READS);
+        PackFile pack = findPack(sha);
+        if (pack == null) {
+            try {
+                return Files.newInputStream(looseFile(sha).toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        PackFile.Blob blob = pack.blob(sha);
+        if (blob != null) {
+            return pack.open(blob);
+        }
+        return new ByteArrayInputStream(load(sha));
+    }
+
+    /** Return a channel over the contents of the object with id SHA, read
+     *  as for stream. */
+    synchronized ReadableByteChannel channel(String sha) {
+        if (findPack(sha) == null) {
+            Stats.count(Stats.Counter.OBJECT_READS);
+            try {
+                return FileChannel.open(looseFile(sha).toPath(),
+                                        StandardOpenOption.READ);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return Channels.newChannel(stream(sha));
+    }
+
+    /** Return a read-only buffer holding the contents of the object with
+     *  id SHA.  Loose objects and blobs stored unencoded in a pack are
+     *  mapped from their files rather than read into the heap. */
+    synchronized ByteBuffer map(String sha) {
+        Stats.count(Stats.Counter.OBJECT_READS);
+        PackFile pack = findPack(sha);
+        if (pack == null) {
+            try (FileChannel in = FileChannel.open(looseFile(sha).toPath(),
+                                                   StandardOpenOption.READ)) {
+                return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        PackFile.Blob blob = pack.blob(sha);
+        if (blob != null && blob.codec == Compression.STORED) {
+            return pack.map(blob);
+        }
+        return ByteBuffer.wrap(load(sha)).asReadOnlyBuffer();
+    }
+
+    /** Write the contents of the object with id SHA to OUT and return
+     *  their size.  Loose objects and blobs stored unencoded in a pack are
+     *  copied with FileChannel.transferTo, so that the operating system
+     *  can move them without passing them through the Java heap; other
+     *  blobs are decoded through a buffer of fixed size, and only deltas
+     *  are reconstructed in memory.  The store is locked only while the
+     *  object is found, so that several objects may be copied at once. */
+    long transferTo(String sha, WritableByteChannel out) {
+        PackFile pack;
+        PackFile.Blob blob = null;
+        File file = null;
+        byte[] contents = null;
+        synchronized (this) {
+            Stats.count(Stats.Counter.OBJECT_READS);
+            pack = findPack(sha);
+            if (pack == null) {
+                file = looseFile(sha);
+            } else {
+                blob = pack.blob(sha);
+                if (blob == null) {
+                    contents = load(sha);
+                }
+            }
+        }
+        try {
+            if (file != null) {
+                try (FileChannel in = FileChannel.open(
+                         file.toPath(), StandardOpenOption.READ)) {
+                    return PackFile.transfer(in, 0, in.size(), out);
+                }
+            } else if (contents != null) {
+                return write(ByteBuffer.wrap(contents), out);
+            } else if (blob.codec == Compression.STORED) {
+                return pack.transferTo(blob, out);
+            }
+            long size = 0;
+            byte[] buf = new byte[PackFile.STREAM_BUFFER_SIZE];
+            try (InputStream in = pack.open(blob)) {
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    size += write(ByteBuffer.wrap(buf, 0, n), out);
+                }
+            }
+            return size;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of the object with id SHA to DEST, as for
+     *  transferTo. */
+    void writeTo(String sha, File dest) {
+        long start = Stats.start();
+        try (FileChannel out = FileChannel.open(
+                 dest.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = transferTo(sha, out);
+            Stats.count(Stats.Counter.FILES_WRITTEN);
+            Stats.count(Stats.Counter.FILE_BYTES_WRITTEN, size);
+            Stats.stop(Stats.Timer.FILE_WRITE, start);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the remaining bytes of BUF to OUT and return their number. */
+    private static int write(ByteBuffer buf, WritableByteChannel out)
+        throws IOException {
+        int size = buf.remaining();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        return size;
+    }
+
+    /** Make all objects stored during this command permanent. */
+    synchronized void flush() {
+        for (PackFile pack : _packs) {
+            pack.flush();
+        }
+    }
+
+    /** Rewrite this store so that it holds exactly the objects whose ids
+     *  are in KEEP, and return the number of bytes this frees.  The kept
+     *  objects are copied, as they are stored, into new packs, except that
+     *  a delta whose base is not kept is stored complete.  Loose objects
+     *  are packed as well.  The new packs are made durable before the old
+     *  packs and loose objects are deleted, so that a crash in between
+     *  leaves every object in the store. */
+    synchronized long repack(Set<String> keep) {
+        flush();
+        List<PackFile> old = new ArrayList<>(_packs);
+        List<PackFile> fresh = new ArrayList<>();
+        Set<String> moved = new HashSet<>(), dropped = new HashSet<>();
+        long before = 0;
+        for (int i = old.size() - 1; i >= 0; i -= 1) {
+            PackFile pack = old.get(i);
+            before += pack.size() + pack.getIndexFile().length();
+            for (String sha : pack.ids()) {
+                if (!keep.contains(sha)) {
+                    dropped.add(sha);
+                    continue;
+                } else if (!moved.add(sha)) {
+                    continue;
+                }
+                String base = pack.deltaBase(sha);
+                if (base == null || keep.contains(base) && contains(base)) {
+                    target(fresh).copy(sha, pack);
+                } else {
+                    target(fresh).append(sha, load(sha));
+                }
+            }
+        }
+        File[] loose = _dir.listFiles();
+        if (loose != null) {
+            for (File file : loose) {
+                String sha = file.getName();
+                if (!file.isFile() || sha.length() != Utils.UID_LENGTH) {
+                    continue;
+                }
+                before += file.length();
+                if (!keep.contains(sha)) {
+                    dropped.add(sha);
+                } else if (moved.add(sha)) {
+                    target(fresh).append(sha, Utils.readContents(file));
+                }
+            }
+        }
+        long after = 0;
+        for (PackFile pack : fresh) {
+            pack.flush();
+            after += pack.size() + pack.getIndexFile().length();
+        }
+        Transaction.commit();
+        for (PackFile pack : old) {
+            pack.delete();
+        }
+        if (loose != null) {
+            for (File file : loose) {
+                if (file.isFile()
+                    && file.getName().length() == Utils.UID_LENGTH) {
+                    file.delete();
+                }
+            }
+        }
+        _packs.clear();
+        _packs.addAll(fresh);
+        _bases.clear();
+        _baseBytes = 0;
+        _removed = dropped.size();
+        return before - after;
+    }
+
+    /** Return the number of objects that the last repack removed. */
+    int removed() {
+        return _removed;
+    }
+
+    /** Return the last of PACKS, the new packs of a repack, adding a new
+     *  one first if there are none or the last is full. */
+    private PackFile target(List<PackFile> packs) {
+        if (packs.isEmpty()
+            || packs.get(packs.size() - 1).size() >= MAX_PACK_SIZE) {
+            _packDir.mkdirs();
+            packs.add(new PackFile(Utils.join(_packDir,
+                String.format("pack-%08d.pack", _nextPack))));
+            _nextPack += 1;
+        }
+        return packs.get(packs.size() - 1);
+    }
+
+    /** Return all packs in this store, oldest first. */
+    List<PackFile> packs() {
+        return _packs;
+    }
+
+    /** Remember CONTENTS, the contents of the object with id SHA, as a
+     *  recently used delta base. */
+    private void cacheBase(String sha, byte[] contents) {
+        if (contents.length > BASE_CACHE_BYTES || _bases.containsKey(sha)) {
+            return;
+        }
+        _bases.put(sha, contents);
+        _baseBytes += contents.length;
+        Iterator<Map.Entry<String, byte[]>> eldest =
+            _bases.entrySet().iterator();
+        while (_baseBytes > BASE_CACHE_BYTES) {
+            _baseBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /** Return the pack holding SHA, or null if it is in none. */
+    private PackFile findPack(String sha) {
+        for (int i = _packs.size() - 1; i >= 0; i -= 1) {
+            if (_packs.get(i).contains(sha)) {
+                return _packs.get(i);
+            }
+        }
+        return null;
+    }
+
+    /** Return the file that holds SHA as a loose object. */
+    private File loose(String sha) {
+        return Utils.join(_dir, sha);
+    }
+
+    /** Return the file that holds SHA as a loose object, throwing
+     *  IllegalArgumentException if there is none. */
+    private File looseFile(String sha) {
+        File file = loose(sha);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("no object " + sha);
+        }
+        return file;
+    }
+
+    /** Return the pack that new objects are appended to, starting a new
+     *  one if the newest pack is full. */
+    private PackFile activePack() {
+        return target(_packs);
+    }
+
+    /** The stores opened so far, by object directory. */
+    private static final HashMap<File, ObjectStore> STORES = new HashMap<>();
+
+    /** Directory holding loose objects and the pack directory. */
+    private final File _dir;
+    /** Directory holding the packs. */
+    private final File _packDir;
+    /** The packs of this store, oldest first. */
+    private final ArrayList<PackFile> _packs;
+    /** Sequence number of the next pack to be created. */
+    private int _nextPack;
+    /** Recently used delta bases, by id, least recently used first. */
+    private final Map<String, byte[]> _bases =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Total size of the contents in _bases. */
+    private long _baseBytes;
+    /** Number of objects removed by the last repack. */
+    private int _removed;
+}
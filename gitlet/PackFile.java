@@ -0,0 +1,723 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.InflaterInputStream;
+
+/** A single pack of objects: an append-only data file (NAME.pack) holding
+ *  object contents back to back, and a sorted index (NAME.idx) mapping the
+ *  SHA-1 id of each object to its offset in the data file.
+ *
+ *  The index starts with a 256-entry fanout table whose entry B is the
+ *  number of ids whose first byte is at most B, so that a lookup only has
+ *  to binary search the ids sharing its first byte.  The table is followed
+ *  by the sorted binary ids and then by their offsets, in the same order.
+ *  Objects appended since the last flush are kept in memory until the
+ *  index is rewritten by flush.
+ *
+ *  Each entry of the data file is a kind byte, the length of its data and
+ *  the data.  A BLOB entry's data is the object itself; a DELTA entry's
+ *  data is the binary id of a base object followed by a Delta that turns
+ *  the base into the object.  The base may be in any pack of the store.
+ *  If the ENCODED bit of the kind byte is set, the object or delta is
+ *  encoded as by Compression.encode.  The length of a LARGE entry is a
+ *  long rather than an int, and its object, always a complete blob, is
+ *  encoded as by Compression.encodeLarge; such entries are streamed into
+ *  the pack from a file, so that objects of any size are stored without
+ *  being held in memory.
+ *
+ *  Version 1 data files hold only BLOB entries, version 2 files add
+ *  unencoded DELTA entries, version 3 files encoded entries and version 4
+ *  files LARGE entries.  Older data files are marked with the current
+ *  version when the first entry is appended to them.
+ */
+class PackFile {
+
+    /** Magic number at the start of every pack data file ("GPAK"). */
+    static final int PACK_MAGIC = 0x4750414b;
+    /** Magic number at the start of every pack index file ("GIDX"). */
+    static final int IDX_MAGIC = 0x47494458;
+    /** Current version of the pack data format. */
+    static final int VERSION = 4;
+    /** Current version of the pack index format. */
+    static final int IDX_VERSION = 1;
+    /** Size in bytes of the header of both kinds of file. */
+    static final int HEADER_SIZE = 8;
+    /** Number of entries in the fanout table. */
+    static final int FANOUT = 256;
+    /** Kind byte of an entry holding a complete blob. */
+    static final byte BLOB = 1;
+    /** Kind byte of an entry holding a blob as a delta against another. */
+    static final byte DELTA = 2;
+    /** Bit of the kind byte marking entries whose contents are encoded. */
+    static final byte ENCODED = (byte) 0x80;
+    /** Bit of the kind byte marking entries with a long length. */
+    static final byte LARGE = 0x40;
+    /** Size of the kind and length prefix of each entry. */
+    static final int ENTRY_HEADER_SIZE = 5;
+    /** Size of the kind and length prefix of a LARGE entry. */
+    static final int LARGE_ENTRY_HEADER_SIZE = 9;
+    /** Size of the buffers through which blobs are streamed. */
+    static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    /** A pack whose data file is PACK and whose index lives next to it. */
+    PackFile(File pack) {
+        _pack = pack;
+        String name = pack.getName();
+        _idx = new File(pack.getParentFile(),
+                        name.substring(0, name.length() - ".pack".length())
+                        + ".idx");
+    }
+
+    /** Return the data file of this pack. */
+    File getPackFile() {
+        return _pack;
+    }
+
+    /** Return the index file of this pack. */
+    File getIndexFile() {
+        return _idx;
+    }
+
+    /** Return the current size in bytes of the data file. */
+    long size() {
+        return _pack.length();
+    }
+
+    /** Return the ids of all objects in this pack, in no particular
+     *  order. */
+    List<String> ids() {
+        loadIndex();
+        List<String> result = new ArrayList<>(_pending.keySet());
+        byte[] id = new byte[Utils.UID_BYTES];
+        for (int i = 0; i < _count; i += 1) {
+            _index.get(idsStart() + Utils.UID_BYTES * i, id);
+            result.add(Utils.bytesToSha(id, 0));
+        }
+        return result;
+    }
+
+    /** Return true iff this pack holds the object with id SHA. */
+    boolean contains(String sha) {
+        return find(sha) >= 0;
+    }
+
+    /** Return the offset of the object with id SHA in the data file, or -1
+     *  if this pack does not hold it. */
+    long find(String sha) {
+        Long pending = _pending.get(sha);
+        if (pending != null) {
+            return pending;
+        }
+        loadIndex();
+        if (_count == 0) {
+            return -1;
+        }
+        byte[] key = Utils.shaToBytes(sha);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1), hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareId(mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return _index.getLong(offsetsStart() + 8 * mid);
+            }
+        }
+        return -1;
+    }
+
+    /** Return the entry of the object with id SHA, or null if this pack
+     *  does not hold it. */
+    Entry read(String sha) {
+        long offset = find(sha);
+        if (offset < 0) {
+            return null;
+        }
+        try {
+            FileChannel in = reader();
+            ByteBuffer header = entryHeader(offset);
+            byte kind = header.get(0);
+            byte plain = plain(kind);
+            if (plain != BLOB && plain != DELTA) {
+                throw Utils.error("unknown object kind %d in %s", kind,
+                                  _pack.getName());
+            }
+            long length = length(header);
+            if (length > Integer.MAX_VALUE - 8) {
+                throw Utils.error("object %s is too large to read into "
+                                  + "memory", sha);
+            }
+            ByteBuffer contents = ByteBuffer.allocate((int) length);
+            readFully(in, contents, offset + header.capacity());
+            return new Entry(plain, contents.array(),
+                             (kind & ENCODED) != 0, (kind & LARGE) != 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the location of the object with id SHA if this pack holds
+     *  it as a complete blob, and otherwise null.  Only the entry's
+     *  headers are read. */
+    Blob blob(String sha) {
+        long offset = find(sha);
+        if (offset < 0) {
+            return null;
+        }
+        try {
+            ByteBuffer header = entryHeader(offset);
+            byte kind = header.get(0);
+            long length = length(header);
+            if (plain(kind) != BLOB) {
+                return null;
+            }
+            long start = offset + header.capacity();
+            if ((kind & ENCODED) == 0) {
+                return new Blob(start, length, length, Compression.STORED);
+            }
+            boolean large = (kind & LARGE) != 0;
+            ByteBuffer object = ByteBuffer.allocate(
+                large ? Compression.LARGE_HEADER_SIZE
+                : Compression.HEADER_SIZE);
+            readFully(reader(), object, start);
+            byte codec = object.get(0);
+            if (codec != Compression.STORED
+                && codec != Compression.DEFLATED) {
+                throw Utils.error("unknown codec %d", codec);
+            }
+            return new Blob(start + object.capacity(),
+                            length - object.capacity(),
+                            large ? object.getLong(1) : object.getInt(1),
+                            codec);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a stream over the contents of BLOB, a blob of this pack,
+     *  read from the data file and decoded as they are read.  The stream
+     *  must be used up before anything is next appended to this pack. */
+    InputStream open(Blob blob) {
+        try {
+            InputStream in = new BufferedInputStream(
+                new RangeInputStream(reader(), blob.start, blob.length),
+                STREAM_BUFFER_SIZE);
+            return blob.codec == Compression.STORED ? in
+                : new InflaterInputStream(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of BLOB, an unencoded blob of this pack, to OUT,
+     *  letting the operating system copy them straight from the data file
+     *  where it can.  Returns the number of bytes written. */
+    long transferTo(Blob blob, WritableByteChannel out) {
+        try {
+            return transfer(reader(), blob.start, blob.length, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a read-only buffer mapping the contents of BLOB, an
+     *  unencoded blob of this pack, from the data file. */
+    ByteBuffer map(Blob blob) {
+        try {
+            return reader().map(FileChannel.MapMode.READ_ONLY, blob.start,
+                                blob.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the id of the base of the object with id SHA if this pack
+     *  holds it as a delta, and otherwise null. */
+    String deltaBase(String sha) {
+        long offset = find(sha);
+        if (offset < 0) {
+            return null;
+        }
+        try {
+            ByteBuffer header =
+                ByteBuffer.allocate(ENTRY_HEADER_SIZE + Utils.UID_BYTES);
+            header.limit(1);
+            readFully(reader(), header, offset);
+            if (plain(header.get(0)) != DELTA) {
+                return null;
+            }
+            header.limit(header.capacity());
+            readFully(reader(), header, offset);
+            return Utils.bytesToSha(header.array(), ENTRY_HEADER_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append CONTENTS to the data file as the object with id SHA. */
+    void append(String sha, byte[] contents) {
+        append(sha, BLOB, null, contents);
+    }
+
+    /** Append DELTA to the data file as the object with id SHA, stored as
+     *  a delta against the object with id BASESHA. */
+    void appendDelta(String sha, String baseSha, byte[] delta) {
+        append(sha, DELTA, baseSha, delta);
+    }
+
+    /** Append the contents of the file SOURCE to the data file as the
+     *  object with id SHA, in a LARGE entry.  The contents are encoded as
+     *  they are read, so that files of any size are stored in a fixed
+     *  amount of memory. */
+    void append(String sha, File source) {
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            FileChannel out = appender();
+            long offset = out.size();
+            out.position(offset + LARGE_ENTRY_HEADER_SIZE);
+            OutputStream data = new BufferedOutputStream(
+                Channels.newOutputStream(out), STREAM_BUFFER_SIZE);
+            Compression.encodeLarge(in, source.length(), data);
+            data.flush();
+            ByteBuffer header = ByteBuffer.allocate(LARGE_ENTRY_HEADER_SIZE);
+            header.put((byte) (BLOB | ENCODED | LARGE))
+                .putLong(out.size() - offset - LARGE_ENTRY_HEADER_SIZE)
+                .flip();
+            while (header.hasRemaining()) {
+                out.write(header, offset + header.position());
+            }
+            _pending.put(sha, offset);
+            Transaction.written(_pack);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append an entry of kind KIND holding CONTENTS, encoded and preceded
+     *  by the binary form of BASESHA if that is not null, to the data file
+     *  as the object with id SHA. */
+    private void append(String sha, byte kind, String baseSha,
+                        byte[] contents) {
+        try {
+            FileChannel out = appender();
+            byte[] encoded = Compression.encode(contents);
+            int length = encoded.length
+                + (baseSha == null ? 0 : Utils.UID_BYTES);
+            long offset = out.size();
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE + length);
+            entry.put((byte) (kind | ENCODED)).putInt(length);
+            if (baseSha != null) {
+                entry.put(Utils.shaToBytes(baseSha));
+            }
+            entry.put(encoded).flip();
+            while (entry.hasRemaining()) {
+                out.write(entry, offset + entry.position());
+            }
+            _pending.put(sha, offset);
+            Transaction.written(_pack);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append the entry of the object with id SHA in FROM, another pack,
+     *  to the data file unchanged, without decoding it.  A DELTA entry
+     *  keeps its base, which must stay in the store. */
+    void copy(String sha, PackFile from) {
+        long start = from.find(sha);
+        if (start < 0) {
+            throw new IllegalArgumentException("no object " + sha);
+        }
+        try {
+            FileChannel in = from.reader();
+            ByteBuffer header = from.entryHeader(start);
+            FileChannel out = appender();
+            long offset = out.size();
+            out.position(offset);
+            transfer(in, start, header.capacity() + length(header), out);
+            _pending.put(sha, offset);
+            Transaction.written(_pack);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Close this pack and delete its data and index files. */
+    void delete() {
+        try {
+            close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _pending.clear();
+        _index = null;
+        _pack.delete();
+        _idx.delete();
+    }
+
+    /** Rewrite the index so that it covers every object appended since the
+     *  last flush, and release open channels. */
+    void flush() {
+        try {
+            if (!_pending.isEmpty()) {
+                writeIndex();
+                _pending.clear();
+                _index = null;
+            }
+            close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Merge the ids already in the index with the pending ones and write
+     *  the result to a temporary file that then replaces the index. */
+    private void writeIndex() throws IOException {
+        loadIndex();
+        TreeMap<String, Long> all = new TreeMap<>(_pending);
+        byte[] id = new byte[Utils.UID_BYTES];
+        for (int i = 0; i < _count; i += 1) {
+            _index.get(idsStart() + Utils.UID_BYTES * i, id);
+            all.put(Utils.bytesToSha(id, 0),
+                    _index.getLong(offsetsStart() + 8 * i));
+        }
+        int[] fanout = new int[FANOUT];
+        for (String sha : all.keySet()) {
+            fanout[Integer.parseInt(sha.substring(0, 2), 16)] += 1;
+        }
+        File tmp = Transaction.temp(_idx);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmp.toPath())))) {
+            out.writeInt(IDX_MAGIC);
+            out.writeInt(IDX_VERSION);
+            int total = 0;
+            for (int count : fanout) {
+                total += count;
+                out.writeInt(total);
+            }
+            for (String sha : all.keySet()) {
+                out.write(Utils.shaToBytes(sha));
+            }
+            for (long offset : all.values()) {
+                out.writeLong(offset);
+            }
+        }
+        Transaction.install(tmp, _idx);
+    }
+
+    /** Map the index file into memory, if not already done. */
+    private void loadIndex() {
+        if (_index != null) {
+            return;
+        }
+        if (!_idx.exists()) {
+            _index = ByteBuffer.allocateDirect(HEADER_SIZE + 4 * FANOUT)
+                .putInt(IDX_MAGIC).putInt(IDX_VERSION);
+            _count = 0;
+            return;
+        }
+        try (FileChannel in = FileChannel.open(_idx.toPath(),
+                                               StandardOpenOption.READ)) {
+            _index = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.getInt(0) != IDX_MAGIC
+            || _index.getInt(4) != IDX_VERSION) {
+            throw Utils.error("corrupt pack index %s", _idx.getName());
+        }
+        _count = fanout(FANOUT - 1);
+    }
+
+    /** Return the kind byte and length of the entry at OFFSET, in a
+     *  buffer whose capacity is the size of the entry's header. */
+    private ByteBuffer entryHeader(long offset) throws IOException {
+        FileChannel in = reader();
+        ByteBuffer kind = ByteBuffer.allocate(1);
+        readFully(in, kind, offset);
+        ByteBuffer header = ByteBuffer.allocate(
+            (kind.get(0) & LARGE) != 0 ? LARGE_ENTRY_HEADER_SIZE
+            : ENTRY_HEADER_SIZE);
+        readFully(in, header, offset);
+        return header;
+    }
+
+    /** Return the length of the data of the entry whose header, as read
+     *  by entryHeader, is HEADER. */
+    private static long length(ByteBuffer header) {
+        return header.capacity() == LARGE_ENTRY_HEADER_SIZE
+            ? header.getLong(1) : header.getInt(1);
+    }
+
+    /** Return the entry kind, BLOB or DELTA, given by the kind byte
+     *  KIND. */
+    private static byte plain(byte kind) {
+        return (byte) (kind & ~(ENCODED | LARGE));
+    }
+
+    /** Return entry B of the fanout table. */
+    private int fanout(int b) {
+        return _index.getInt(HEADER_SIZE + 4 * b);
+    }
+
+    /** Return the position in the index of the first id. */
+    private int idsStart() {
+        return HEADER_SIZE + 4 * FANOUT;
+    }
+
+    /** Return the position in the index of the first offset. */
+    private int offsetsStart() {
+        return idsStart() + Utils.UID_BYTES * _count;
+    }
+
+    /** Compare the id at position K of the index with the binary id KEY. */
+    private int compareId(int k, byte[] key) {
+        int start = idsStart() + Utils.UID_BYTES * k;
+        for (int i = 0; i < Utils.UID_BYTES; i += 1) {
+            int c = (_index.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return a channel for reading the data file. */
+    private FileChannel reader() throws IOException {
+        if (_out != null) {
+            return _out;
+        }
+        if (_in == null) {
+            _in = FileChannel.open(_pack.toPath(), StandardOpenOption.READ);
+            checkHeader(_in);
+        }
+        return _in;
+    }
+
+    /** Return a channel for appending to the data file, creating the file
+     *  and writing its header if needed. */
+    private FileChannel writer() throws IOException {
+        if (_out == null) {
+            close();
+            _out = FileChannel.open(_pack.toPath(), StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE);
+            if (_out.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(PACK_MAGIC).putInt(VERSION).flip();
+                _out.write(header, 0);
+                _version = VERSION;
+            } else {
+                checkHeader(_out);
+            }
+        }
+        return _out;
+    }
+
+    /** Return a channel for appending to the data file, first marking an
+     *  older data file with the current version. */
+    private FileChannel appender() throws IOException {
+        FileChannel out = writer();
+        if (_version < VERSION) {
+            ByteBuffer version = ByteBuffer.allocate(4);
+            version.putInt(VERSION).flip();
+            out.write(version, 4);
+            _version = VERSION;
+        }
+        return out;
+    }
+
+    /** Read the header of the data file from IN, recording its version and
+     *  checking that this Gitlet can read it. */
+    private void checkHeader(FileChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(in, header, 0);
+        _version = header.getInt(4);
+        if (header.getInt(0) != PACK_MAGIC || _version < 1) {
+            throw Utils.error("corrupt pack %s", _pack.getName());
+        }
+        if (_version > VERSION) {
+            throw Utils.error("pack %s has version %d, newer than this "
+                              + "Gitlet supports", _pack.getName(), _version);
+        }
+    }
+
+    /** Close any open channels on the data file. */
+    private void close() throws IOException {
+        if (_in != null) {
+            _in.close();
+            _in = null;
+        }
+        if (_out != null) {
+            _out.close();
+            _out = null;
+        }
+    }
+
+    /** Copy LENGTH bytes of IN, starting at position START, to OUT with
+     *  FileChannel.transferTo, and return LENGTH. */
+    static long transfer(FileChannel in, long start, long length,
+                         WritableByteChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(start + done, length - done, out);
+            if (n <= 0) {
+                throw new IOException("unexpected end of file");
+            }
+            done += n;
+        }
+        return length;
+    }
+
+    /** Fill BUF from IN, starting at position POS. */
+    static void readFully(FileChannel in, ByteBuffer buf, long pos)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            if (in.read(buf, pos + buf.position()) < 0) {
+                throw new IOException("unexpected end of pack");
+            }
+        }
+    }
+
+    /** One entry of the data file. */
+    static class Entry {
+        /** An entry of kind KIND holding DATA, whose object or delta is
+         *  encoded iff ENCODED, with a large header iff LARGE. */
+        Entry(byte kind, byte[] data, boolean encoded, boolean large) {
+            this.kind = kind;
+            _data = data;
+            _start = kind == DELTA ? Utils.UID_BYTES : 0;
+            _encoded = encoded;
+            _large = large;
+        }
+
+        /** Return the id of the base of a DELTA entry. */
+        String base() {
+            return Utils.bytesToSha(_data, 0);
+        }
+
+        /** Return the object (for a BLOB) or delta (for a DELTA). */
+        byte[] contents() {
+            if (_encoded) {
+                return _large ? Compression.decodeLarge(_data, _start)
+                    : Compression.decode(_data, _start);
+            }
+            return _start == 0 ? _data
+                : Arrays.copyOfRange(_data, _start, _data.length);
+        }
+
+        /** BLOB or DELTA. */
+        final byte kind;
+        /** The data of the entry. */
+        private final byte[] _data;
+        /** Position in _data of the object or delta. */
+        private final int _start;
+        /** True iff the object or delta is encoded. */
+        private final boolean _encoded;
+        /** True iff the encoded object has a large header. */
+        private final boolean _large;
+    }
+
+    /** The location in the data file of a complete blob. */
+    static class Blob {
+        /** A blob whose LENGTH bytes from position START of the data file
+         *  hold its SIZE bytes of contents encoded with CODEC. */
+        Blob(long start, long length, long size, byte codec) {
+            this.start = start;
+            this.length = length;
+            this.size = size;
+            this.codec = codec;
+        }
+
+        /** Position of the encoded contents in the data file. */
+        final long start;
+        /** Length of the encoded contents. */
+        final long length;
+        /** Size of the contents. */
+        final long size;
+        /** Compression.STORED or Compression.DEFLATED. */
+        final byte codec;
+    }
+
+    /** A stream over LENGTH bytes of a channel, starting at position
+     *  START, read without moving the channel's position, so that several
+     *  may be read at once. */
+    private static class RangeInputStream extends InputStream {
+        /** A stream over LENGTH bytes of IN from position START. */
+        RangeInputStream(FileChannel in, long start, long length) {
+            _in = in;
+            _pos = start;
+            _end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (_pos >= _end) {
+                return -1;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(
+                b, off, (int) Math.min(len, _end - _pos));
+            int n = _in.read(buf, _pos);
+            if (n < 0) {
+                throw new IOException("unexpected end of pack");
+            }
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, _end - _pos);
+        }
+
+        /** The channel read. */
+        private final FileChannel _in;
+        /** Position of the next byte. */
+        private long _pos;
+        /** Position just after the last byte. */
+        private final long _end;
+    }
+
+    /** The data file. */
+    private final File _pack;
+    /** The index file. */
+    private final File _idx;
+    /** The mapped index, or null if not yet loaded. */
+    private ByteBuffer _index;
+    /** Number of ids in the index. */
+    private int _count;
+    /** Ids and offsets of objects appended since the last flush. */
+    private final Map<String, Long> _pending = new TreeMap<>();
+    /** Format version of the data file, once its header has been read. */
+    private int _version;
+    /** Channel used for reads, when not appending. */
+    private FileChannel _in;
+    /** Channel used for appends and reads while appending. */
+    private FileChannel _out;
+}
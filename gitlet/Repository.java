@@ -1,20 +1,47 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Queue;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.List;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class Repository implements Serializable {
+    /** Serial version of the .gitlet/repository files written by earlier
+     *  versions, kept so that those can still be migrated. */
+    private static final long serialVersionUID = -913816521288183359L;
+    /** Size of the buffer for the output of global-log. */
+    private static final int LOG_BUFFER_SIZE = 1 << 16;
+    /** Number of commits from which gc marks objects on several
+     *  threads. */
+    private static final int PARALLEL_MARK_COMMITS = 64;
+    /** Grace period of gc when none is given, in days. */
+    static final int DEFAULT_GC_GRACE_DAYS = 14;
 
     /** Current working directory location. */
     private File _CWD = null;
@@ -32,52 +59,97 @@ public class Repository implements Serializable {
     private String _currBranch;
     /** All branch pointers. */
     private File _refs;
-    /** Ordered map between sha-1 code of commit and commit file location. */
+    /** Map between sha-1 code of commit and commit file location, as saved
+     *  by earlier versions.  Only read when migrating. */
     private HashMap<String, File> _commitTree;
-    /** Adding staging object. */
+    /** Adding staging object.  Loaded on first use. */
     private Staging _addStage;
-    /** Removal staging object. */
+    /** Removal staging object.  Loaded on first use. */
     private Staging _removeStage;
-    /** Location where repository is serialized. */
-    private File _repoSavePath;
     /** Indicates whether repo has already been initialized. */
     private boolean _initialized = false;
-    /** Length of a SHA-1 hash. */
-    static final int SHALENGTH = 40;
+    /** Ancestry of all commits, loaded on first use. */
+    private transient CommitGraph _graph;
+    /** Persistent metadata of the repository. */
+    private transient MetaFile _meta;
+    /** True iff the current branch or flags changed in this command. */
+    private transient boolean _coreDirty;
+    /** Sorted ids of all commits, each with the number of the branch
+     *  directory holding it.  Loaded on first use. */
+    private transient ShaIndex _commits;
+    /** Names of the branch directories commits are stored in, by number.
+     *  Loaded with _commits. */
+    private transient ArrayList<String> _commitBranches;
+    /** True iff commits were added to _commits in this command. */
+    private transient boolean _commitsDirty;
+    /** Messages of all commits, loaded on first use. */
+    private transient MessageIndex _messages;
+    /** Commits read or written in this command, by id.  Created on first
+     *  use. */
+    private transient CommitCache _commitCache;
+    /** Algorithm used by diff. */
+    private transient DiffEngine.Algorithm _diffAlgorithm =
+            DiffEngine.Algorithm.MYERS;
 
     public Repository() {
 
     }
 
-    public void init() throws IOException {
-        _CWD = new File(System.getProperty("user.dir"));
+    /** Returns the repository whose working directory is CWD, or an
+     *  uninitialized repository if there is none.  Only the current branch
+     *  is read here; staging areas and the commit table are read when
+     *  first used.  A repository saved by an earlier version of Gitlet as
+     *  .gitlet/repository is converted to the current format first. */
+    public static Repository load(File cwd) throws IOException {
+        File gitletFolder = Utils.join(cwd, ".gitlet");
+        File legacy = Utils.join(gitletFolder, "repository");
+        Repository repo;
+        if (legacy.isFile()) {
+            repo = Utils.readObject(legacy, Repository.class);
+            repo.setPaths(cwd);
+            repo.migrate(legacy);
+        } else {
+            repo = new Repository();
+            if (gitletFolder.isDirectory()) {
+                repo.setPaths(cwd);
+                repo.readCore();
+            }
+        }
+        return repo;
+    }
+    /** Sets the locations of all repository files for working directory
+     *  CWD. */
+    private void setPaths(File cwd) {
+        _CWD = cwd;
         _gitletFolder = new File(_CWD, ".gitlet");
+        _objects = Utils.join(_gitletFolder, "objects");
+        _branches = Utils.join(_gitletFolder, "branches");
+        _refs = Utils.join(_gitletFolder, "refs");
+        _headFile = Utils.join(_gitletFolder, "HEAD");
+        _meta = new MetaFile(Utils.join(_gitletFolder, "meta"));
+    }
+
+    public void init() throws IOException {
+        setPaths(new File(System.getProperty("user.dir")));
         if (_gitletFolder.exists()) {
             Main.exitWithMessage("A Gitlet version-control system already"
                     + " exists in the current directory.");
         }
         _gitletFolder.mkdir();
-        _objects = Utils.join(_gitletFolder, "objects");
         _objects.mkdir();
-        _branches = Utils.join(_gitletFolder, "branches");
         _branches.mkdir();
 
-        _refs = Utils.join(_gitletFolder, "refs");
         _refs.mkdir();
         _currBranch = "master";
         branch("master");
 
-        _headFile = Utils.join(_gitletFolder, "HEAD");
-        _headFile.createNewFile();
-
         _addStage = new Staging("add", _gitletFolder, _CWD);
         _removeStage = new Staging("remove", _gitletFolder, _CWD);
-        _commitTree = new HashMap<>();
+        _commits = new ShaIndex();
+        _commitBranches = new ArrayList<>();
 
         commit("initial commit");
         updateHead("master");
-
-        _repoSavePath = Utils.join(_gitletFolder, "repository");
     }
     /* Creates a new branch with name NAME. */
     public void branch(String name) throws IOException {
@@ -85,16 +157,16 @@ public class Repository implements Serializable {
             Main.exitWithMessage("A branch with that name already exists.");
         }
         Utils.join(_branches, name).mkdir();
-        Utils.join(_refs, name).createNewFile();
-        if (!name.equals("master")) {
-            Utils.writeContents(Utils.join(_refs, name), lastCommitSha());
-        }
+        Transaction.writeRef(Utils.join(_refs, name),
+                name.equals("master") ? "" : lastCommitSha());
     }
     public void commit(String message) throws IOException {
         commit(message, null);
     }
     /** Creates a new commit with the given MESSAGE and parent2 P2SHA. */
     public void commit(String message, String p2Sha) throws IOException {
+        Events.Commit event = new Events.Commit();
+        event.begin();
         String parentSha;
         Commit parentCommit;
         Commit p2Commit = null;
@@ -102,6 +174,7 @@ public class Repository implements Serializable {
             parentSha = null;
             parentCommit = null;
             _initialized = true;
+            _coreDirty = true;
         } else {
             parentSha = lastCommitSha();
             parentCommit = getCommitFromSha(parentSha);
@@ -111,13 +184,25 @@ public class Repository implements Serializable {
         }
         Commit initial = new Commit(message, parentSha, parentCommit, p2Sha,
                 p2Commit, this);
-        String commitSha1 = Utils.sha1(Utils.serialize(initial));
+        byte[] serialized = Utils.serialize(initial);
+        String commitSha1 = Utils.sha1(serialized);
         File commitPath = Utils.join(_branches, _currBranch, commitSha1);
-        Utils.writeObject(commitPath, initial);
+        Compression.writeFile(commitPath, serialized);
+        getCommitCache().put(commitSha1, initial, commitPath.length());
         updateBranchHead(_currBranch, commitSha1);
-        _commitTree.put(commitSha1, commitPath);
+        addCommit(commitSha1, _currBranch);
+        getGraph().append(commitSha1, parentSha, p2Sha,
+                initial.getTimestamp());
+        getMessageIndex().append(commitSha1, message);
+        event.commitId = commitSha1;
+        event.parentId = parentSha;
+        event.mergedId = p2Sha;
+        event.message = message;
+        event.bytes = serialized.length;
+        event.commit();
     }
-    /** Checks out FILENAME with SHA-1 ID. */
+    /** Checks out FILENAME, taken relative to the working directory, with
+     *  SHA-1 ID. */
     public void checkoutFile(String id, String fileName) throws IOException {
         if (id == null) {
             id = lastCommitSha();
@@ -126,19 +211,25 @@ public class Repository implements Serializable {
         if (chOutCommit == null) {
             Main.exitWithMessage("No commit with that id exists.");
         }
-        String fileSha = chOutCommit.getShafromName(fileName);
+        fileName = Utils.workingPath(_CWD, fileName);
+        String fileSha =
+            fileName == null ? null : chOutCommit.getShafromName(fileName);
         if (fileSha == null) {
             Main.exitWithMessage("File does not exist in that commit.");
         }
-        File fileCommitPath = chOutCommit.getFileFromSha(fileSha);
         File workingDirPath = Utils.join(_CWD, fileName);
-        workingDirPath.createNewFile();
-        writeFromFile(fileCommitPath, workingDirPath);
+        workingDirPath.getParentFile().mkdirs();
+        chOutCommit.writeFile(fileName, workingDirPath);
+        getStatCache().update(fileName, fileSha);
     }
 
     /** Checks out all files tracked by the commit with SHA-1 SHA. Moves the
     branch's head to that commit node. */
     public void reset(String sha) throws IOException {
+        String id = resolveCommitId(sha);
+        if (id != null) {
+            sha = id;
+        }
         checkoutBranchWithSha(sha);
         clearStaging();
         String newBranch = getCommitFromSha(sha).getBranch();
@@ -146,173 +237,223 @@ public class Repository implements Serializable {
     }
     /** Updates BRANCHNAME's head commit with the new commit id SHA. */
     private void updateBranchHead(String branchName, String sha) {
-        Utils.writeContents(Utils.join(_refs, branchName), sha);
+        Transaction.writeRef(Utils.join(_refs, branchName), sha);
     }
     /** Updates the head pointer file by chaning the current branch to
      * NEWBRANCH and writes path of current branch head to the head file. */
     public void updateHead(String newBranch) {
         _currBranch = newBranch;
+        _coreDirty = true;
         _head = Utils.join(_refs, _currBranch);
-        Utils.writeContents(_headFile, _head.getPath());
+        Transaction.writeRef(_headFile, _head.getPath());
     }
     /** Merge current branch with given branch with name BRANCHNAME. */
     public void merge(String branchName) throws IOException {
+        Events.Merge event = new Events.Merge();
+        event.begin();
+        event.branch = branchName;
         checkBranchValid(branchName);
-        if (_addStage.getStagedNameToPath().size() != 0
-                || _removeStage.getStagedNameToPath().size() != 0) {
+        if (getAddStage().getStagedNameToSha().size() != 0
+                || getRemStage().getStagedNameToSha().size() != 0) {
             Main.exitWithMessage("You have uncommitted changes.");
         } else if (branchName.equals(_currBranch)) {
             Main.exitWithMessage("Cannot merge a branch with itself.");
         }
 
         String curSha = lastCommitSha();
-        Commit cur = getCommitFromSha(curSha);
-        String givenSha = Utils.readContentsAsString(
-                Utils.join(_refs, branchName));
+        String givenSha = Transaction.readRef(Utils.join(_refs, branchName));
         Commit given = getCommitFromSha(givenSha);
-        String splitSha = findSplit(curSha, cur, givenSha, given);
-        Commit split = getCommitFromSha(splitSha);
-
-        if (splitSha.equals(givenSha)) {
+        event.currentId = curSha;
+        event.givenId = givenSha;
+        if (getGraph().isAncestor(givenSha, curSha)) {
             Main.exitWithMessage("Given branch is an ancestor of the current "
                     + "branch.");
-        } else if (splitSha.equals(curSha)) {
+        } else if (getGraph().isAncestor(curSha, givenSha)) {
             checkoutBranch(branchName);
             Main.exitWithMessage("Current branch fast-forwarded.");
         }
+        String splitSha = findSplit(curSha, givenSha);
+        Commit split = getCommitFromSha(splitSha);
+        event.splitId = splitSha;
+        Commit cur = getCommitFromSha(curSha);
+        TreeMap<String, String[]> givenChanges = split.changesTo(given);
+        TreeMap<String, String[]> curChanges = split.changesTo(cur);
 
-        for (String fileName: getUntrackedFiles()) {
-            if (!myEquals(split.getShafromName(fileName),
-                    given.getShafromName(fileName))) {
+        for (Map.Entry<String, String[]> e : givenChanges.entrySet()) {
+            String fileName = e.getKey();
+            String[] curShas = curChanges.get(fileName);
+            boolean written = curShas == null ? e.getValue()[1] != null
+                : !myEquals(curShas[1], e.getValue()[1]);
+            if (written && !cur.contains(fileName)
+                    && Utils.join(_CWD, fileName).isFile()) {
                 Main.exitWithMessage("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
             }
         }
-        mergeGiven(givenSha, splitSha, curSha);
-        mergeConflicts(givenSha, splitSha, curSha);
+        mergeGiven(given, givenChanges, curChanges);
+        event.conflicted = mergeConflicts(cur, given, givenChanges,
+                curChanges);
         commit("Merged " + branchName + " into " + _currBranch
                 + ".", givenSha);
+        event.commit();
     }
     /** Returns the closest split point for merging a given branch, with
-     *  commit GIVEN at its head and SHA-1 GIVENSHA, and the current branch
-     *  with commit CUR at the head and SHA-1 CURSHA. */
-    public String findSplit(String curSha, Commit cur, String givenSha,
-                            Commit given) {
-        HashSet<String> parents = new HashSet<>();
-        parents.add(givenSha);
-        addParents(given, parents);
-        return findAncestor(curSha, cur, parents);
-    }
-    /** Adds all parents of given commit COM to the hashSet of its parents,
-     *  PSET. */
-    public void addParents(Commit com, HashSet<String> pSet) {
-        String p1 = com.getParent1Sha();
-        String p2 = com.getParent2Sha();
-        if (p1 != null) {
-            pSet.add(p1);
-            addParents(getCommitFromSha(p1), pSet);
-        }
-        if (p2 != null) {
-            pSet.add(p2);
-            addParents(getCommitFromSha(p2), pSet);
-        }
-    }
-    /** Returns the earliest ancestor of the given commit COM with SHA-1 COMSHA
-     *  that is in the set of the other branch's ancestors, PSET. */
-    public String findAncestor(String comSha, Commit com,
-                               HashSet<String> pSet) {
-        Queue<String> directAncestorsSha = new LinkedList<>();
-        Queue<Commit> directAncestorsCom = new LinkedList<>();
-        directAncestorsSha.add(comSha);
-        directAncestorsCom.add(com);
-        String ancest;
-        Commit ancesCom;
-        while (!directAncestorsSha.isEmpty()) {
-            ancest = directAncestorsSha.poll();
-            ancesCom = directAncestorsCom.poll();
-            if (pSet.contains(ancest)) {
-                return ancest;
-            } else {
-                if (ancesCom.getParent1Sha() != null) {
-                    directAncestorsSha.offer(ancesCom.getParent1Sha());
-                    directAncestorsCom.offer(getCommitFromSha(
-                            ancesCom.getParent1Sha()));
+     *  SHA-1 GIVENSHA at its head, and the current branch, with SHA-1
+     *  CURSHA at its head. */
+    public String findSplit(String curSha, String givenSha) {
+        return getGraph().mergeBase(curSha, givenSha);
+    }
+    /** Return the commit graph, building it from the commit table first if
+     *  it was written by an earlier version or is missing commits. */
+    public CommitGraph getGraph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(Utils.join(_gitletFolder,
+                    "commit-graph"));
+            if (_graph.size() == 0 || (_commits != null
+                    && _graph.size() < _commits.size())) {
+                ShaIndex commits = getCommits();
+                for (int k = 0; k < commits.size(); k += 1) {
+                    addToGraph(commits.sha(k));
                 }
-                if (ancesCom.getParent2Sha() != null) {
-                    directAncestorsSha.offer(ancesCom.getParent2Sha());
-                    directAncestorsCom.offer(getCommitFromSha(
-                            ancesCom.getParent2Sha()));
+            }
+        }
+        return _graph;
+    }
+    /** Return the index of commit messages, first recording the messages
+     *  of any commits it is missing, as when it was written by an earlier
+     *  version. */
+    public MessageIndex getMessageIndex() {
+        if (_messages == null) {
+            _messages = new MessageIndex(Utils.join(_gitletFolder,
+                    "messages"));
+            ShaIndex commits = getCommits();
+            if (_messages.size() < commits.size()) {
+                for (int k = 0; k < commits.size(); k += 1) {
+                    String sha = commits.sha(k);
+                    if (!_messages.contains(sha)) {
+                        _messages.append(sha,
+                                getCommitFromSha(sha).getMessage());
+                    }
                 }
             }
         }
-        return null;
+        return _messages;
     }
-    /** Merges files changed in the given branch, with head ID GIVENID since
-     *  the split point with ID SPLITID, but not in the current branch, with
-     *  head ID CURID. */
-    public void mergeGiven(String givenID, String splitID, String curID)
-            throws IOException {
-        Commit given = getCommitFromSha(givenID);
-        Commit split = getCommitFromSha(splitID);
-        Commit cur = getCommitFromSha(curID);
-        for (String fileName: given.getShaToName().values()) {
-            if (myEquals(split.getShafromName(fileName),
-                    cur.getShafromName(fileName))
-                    && !myEquals(split.getShafromName(fileName),
-                    given.getShafromName(fileName))) {
-                checkoutFile(givenID, fileName);
-                add(fileName);
+    /** Adds the commit with id SHA to the commit graph after all of its
+     *  ancestors that are not there yet. */
+    private void addToGraph(String sha) {
+        LinkedList<String> work = new LinkedList<>();
+        work.push(sha);
+        while (!work.isEmpty()) {
+            String top = work.peek();
+            if (_graph.contains(top)) {
+                work.pop();
+                continue;
+            }
+            Commit com = getCommitFromSha(top);
+            String p1 = com.getParent1Sha(), p2 = com.getParent2Sha();
+            if (p1 != null && !_graph.contains(p1)) {
+                work.push(p1);
+            } else if (p2 != null && !_graph.contains(p2)) {
+                work.push(p2);
+            } else {
+                _graph.append(top, p1, p2, com.getTimestamp());
+                work.pop();
             }
         }
-        for (String fileName: split.getShaToName().values()) {
-            if (myEquals(split.getShafromName(fileName),
-                    cur.getShafromName(fileName))
-                    && !given.contains(fileName)) {
-                rm(fileName);
+    }
+    /** Merges files changed since the split point in the given branch,
+     *  whose head is GIVEN, but not in the current branch, where
+     *  GIVENCHANGES and CURCHANGES are the changes from the split point to
+     *  the heads of the given and current branches, as from
+     *  Commit.changesTo.  Files are written from the given branch's blobs
+     *  and staged by id, without being hashed again. */
+    public void mergeGiven(Commit given,
+            Map<String, String[]> givenChanges,
+            Map<String, String[]> curChanges) {
+        for (Map.Entry<String, String[]> e : givenChanges.entrySet()) {
+            String fileName = e.getKey();
+            String givenFileSha = e.getValue()[1];
+            if (curChanges.containsKey(fileName)) {
+                continue;
+            } else if (givenFileSha == null) {
+                getRemStage().stageBlob(fileName, e.getValue()[0]);
+                Utils.restrictedDelete(_CWD, fileName);
+            } else {
+                File filePath = Utils.join(_CWD, fileName);
+                filePath.getParentFile().mkdirs();
+                given.writeFile(fileName, filePath);
+                getStatCache().update(fileName, givenFileSha);
+                getAddStage().stageBlob(fileName, givenFileSha);
             }
         }
     }
-    /** Merges conflicting files between the given and current branch, with
-     *  SHA-1 id's GIVENID and CURID respectively, with split point SPLITID. */
-    public void mergeConflicts(String givenID, String splitID, String curID)
-            throws IOException {
-        Commit given = getCommitFromSha(givenID);
-        Commit split = getCommitFromSha(splitID);
-        Commit cur = getCommitFromSha(curID);
-        File filePath;
+    /** Writes and stages the files changed differently in the current
+     *  branch, whose head is CUR, and the given branch, whose head is
+     *  GIVEN, since the split point, where GIVENCHANGES and CURCHANGES are
+     *  the changes from the split point to those heads.  Returns true iff
+     *  there was a conflict. */
+    public boolean mergeConflicts(Commit cur, Commit given,
+            Map<String, String[]> givenChanges,
+            Map<String, String[]> curChanges) {
+        ObjectStore store = cur.getStore();
         boolean encounteredConf = false;
-        StringBuilder content = new StringBuilder();
-        Set<String> mergedSet = new HashSet<>(given.getNameToSha().keySet());
-        mergedSet.addAll(cur.getNameToSha().keySet());
-
-        for (String fileName: mergedSet) {
-            if (!myEquals(split.getShafromName(fileName),
-                    cur.getShafromName(fileName))
-                    && !myEquals(split.getShafromName(fileName),
-                    given.getShafromName(fileName))
-                    && !myEquals(given.getShafromName(fileName),
-                    cur.getShafromName(fileName))) {
-                content.append("<<<<<<< HEAD\n");
-                if (cur.getShafromName(fileName) != null) {
-                    content.append(cur.getFileContentsAsString(fileName));
-                }
-                content.append("=======\n");
-                if (given.getShafromName(fileName) != null) {
-                    content.append(given.getFileContentsAsString(fileName));
-                }
-                content.append(">>>>>>>\n");
-                filePath = Utils.join(_CWD, fileName);
-                filePath.createNewFile();
-
-                Utils.writeContents(filePath, content.toString());
-                content.setLength(0);
-                add(fileName);
-                encounteredConf = true;
+        for (Map.Entry<String, String[]> e : givenChanges.entrySet()) {
+            String fileName = e.getKey();
+            String[] curShas = curChanges.get(fileName);
+            if (curShas == null || myEquals(curShas[1], e.getValue()[1])) {
+                continue;
             }
+            File filePath = Utils.join(_CWD, fileName);
+            filePath.getParentFile().mkdirs();
+            writeConflict(cur, given, fileName, filePath);
+            String sha = getShafromFile(filePath, fileName);
+            store.put(sha, filePath, curShas[1]);
+            getStatCache().update(fileName, sha);
+            getAddStage().stageBlob(fileName, sha);
+            encounteredConf = true;
         }
         if (encounteredConf) {
             System.out.println("Encountered a merge conflict.");
         }
+        return encounteredConf;
+    }
+    /** Writes to DEST the conflicted version of FILENAME: its contents in
+     *  the current branch's head CUR and in the given branch's head GIVEN,
+     *  either of which may lack it, between conflict markers.  The
+     *  contents are copied straight from the object store. */
+    private void writeConflict(Commit cur, Commit given, String fileName,
+            File dest) {
+        long start = Stats.start();
+        try (FileChannel out = FileChannel.open(dest.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = writeMarker(out, "<<<<<<< HEAD\n");
+            if (cur.contains(fileName)) {
+                size += cur.copyFile(fileName, out);
+            }
+            size += writeMarker(out, "=======\n");
+            if (given.contains(fileName)) {
+                size += given.copyFile(fileName, out);
+            }
+            size += writeMarker(out, ">>>>>>>\n");
+            Stats.count(Stats.Counter.FILES_WRITTEN);
+            Stats.count(Stats.Counter.FILE_BYTES_WRITTEN, size);
+            Stats.stop(Stats.Timer.FILE_WRITE, start);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+    /** Writes MARKER to OUT and returns its length in bytes. */
+    private static int writeMarker(FileChannel out, String marker)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(
+                marker.getBytes(StandardCharsets.UTF_8));
+        int size = buf.remaining();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        return size;
     }
     /** Remove the current branch with name BRANCHNAME, deleting its pointer,
      *  not its commits. */
@@ -322,7 +463,121 @@ public class Repository implements Serializable {
         }
         File branchRef = Utils.join(_refs, branchName);
         checkBranchValid(branchName);
-        branchRef.delete();
+        Transaction.deleteRef(branchRef);
+    }
+
+    /** Removes the commits that no branch reaches, such as those
+     *  abandoned by reset or left behind by rm-branch, and the objects that
+     *  no remaining commit or staged file uses, such as blobs staged and
+     *  then unstaged.  Unreachable commits made within the last GRACE
+     *  milliseconds are kept, with everything they reach.  The commits to
+     *  keep are marked from the commit graph without being read; their
+     *  trees are then marked on several threads when there are many of
+     *  them.  The commit table, graph and message index are compacted to
+     *  the commits kept before any commit or object is deleted, and the
+     *  object store is then repacked.  Prints what was removed and the
+     *  bytes reclaimed. */
+    public void gc(long grace) throws IOException {
+        CommitGraph graph = getGraph();
+        ShaIndex commits = getCommits();
+        BitSet keep = new BitSet(graph.size());
+        String[] branches = _refs.list();
+        for (String branch : branches == null ? new String[0] : branches) {
+            File ref = Utils.join(_refs, branch);
+            if (Transaction.refExists(ref)) {
+                String sha = Transaction.readRef(ref);
+                if (!sha.isEmpty()) {
+                    graph.addAncestors(graph.position(sha), keep);
+                }
+            }
+        }
+        long cutoff = System.currentTimeMillis() - grace;
+        for (int pos = 0; pos < graph.size(); pos += 1) {
+            if (!keep.get(pos) && graph.date(pos) > cutoff) {
+                graph.addAncestors(pos, keep);
+            }
+        }
+        List<String> kept = new ArrayList<>();
+        for (int pos = keep.nextSetBit(0); pos >= 0;
+             pos = keep.nextSetBit(pos + 1)) {
+            kept.add(graph.sha(pos));
+        }
+        Set<String> marked = ConcurrentHashMap.newKeySet();
+        marked.addAll(getAddStage().getStagedNameToSha().values());
+        markCommits(kept, marked);
+
+        Set<String> keptIds = new HashSet<>(kept);
+        ShaIndex compacted = new ShaIndex();
+        List<File> dropped = new ArrayList<>();
+        for (int k = 0; k < commits.size(); k += 1) {
+            String sha = commits.sha(k);
+            if (keptIds.contains(sha)) {
+                compacted.add(sha, commits.value(k));
+            } else {
+                dropped.add(commitFile(sha));
+            }
+        }
+        getMessageIndex().retain(keptIds);
+        graph.retain(keep);
+        _messages = null;
+        _graph = null;
+        _commits = compacted;
+        _commitsDirty = true;
+        _commitCache = null;
+        save();
+        Transaction.commit();
+
+        long reclaimed = 0;
+        for (File file : dropped) {
+            reclaimed += file.length();
+            file.delete();
+        }
+        ObjectStore store = getStore();
+        reclaimed += store.repack(marked);
+        System.out.printf("Removed %d commits and %d objects; reclaimed %d "
+                + "bytes.%n", dropped.size(), store.removed(), reclaimed);
+    }
+
+    /** Adds to MARKED the ids of the trees and blobs of each of the commits
+     *  with ids SHAS.  Commits are read straight from their files, not
+     *  through the commit cache, so that many may be read on a pool of
+     *  StatCache.parallelism() threads, which is used once there are at
+     *  least PARALLEL_MARK_COMMITS of them. */
+    private void markCommits(List<String> shas, Set<String> marked) {
+        if (shas.size() < PARALLEL_MARK_COMMITS
+                || StatCache.parallelism() < 2) {
+            for (String sha : shas) {
+                markCommit(sha, marked);
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(StatCache.parallelism());
+        try {
+            pool.submit(() -> shas.parallelStream()
+                    .forEach(sha -> markCommit(sha, marked))).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Adds to MARKED the ids of the trees and blobs of the commit with id
+     *  SHA. */
+    private void markCommit(String sha, Set<String> marked) {
+        Commit com = Compression.readObject(commitFile(sha), Commit.class);
+        if (com.getTree() != null) {
+            Tree.mark(getStore(), com.getTree(), marked);
+        } else {
+            marked.addAll(com.getNameToSha().values());
+        }
     }
 
     /** Checkout BRANCHNAME by putting all of the files from the given branch
@@ -333,117 +588,162 @@ public class Repository implements Serializable {
             Main.exitWithMessage("No need to checkout the current branch.");
         }
         File branchRef = Utils.join(_refs, branchName);
-        if (!branchRef.exists()) {
+        if (!Transaction.refExists(branchRef)) {
             Main.exitWithMessage("No such branch exists.");
         }
-        String branchHeadSha = Utils.readContentsAsString(branchRef);
+        String branchHeadSha = Transaction.readRef(branchRef);
         checkoutBranchWithSha(branchHeadSha);
         updateHead(branchName);
     }
     /** Checkout the commit with id SHA by putting all of the files from the
      *  given branch in the working directory and overwriting existing
-     *  versions if they exist. */
+     *  versions if they exist.  Only files whose working copies differ
+     *  from the commit's versions are written (see CheckoutPlan). */
     public void checkoutBranchWithSha(String sha) throws IOException {
+        Events.Checkout event = new Events.Checkout();
+        event.begin();
         Commit curBranch = getCommitFromSha(lastCommitSha());
         Commit branchHeadCom = getCommitFromSha(sha);
         if (branchHeadCom == null) {
             Main.exitWithMessage("No commit with that id exists.");
         }
-        File[] currDirFiles = _CWD.listFiles();
-        if (currDirFiles != null) {
-            String curDirFileName, comFileSha, curDirFileSha;
-            for (File file: currDirFiles) {
-                curDirFileName = file.getName();
-                comFileSha = branchHeadCom.getShafromName(curDirFileName);
-                if (curBranch.getShafromName(curDirFileName) == null
-                        && comFileSha != null) {
-                    curDirFileSha = getShafromFile(file, curDirFileName);
-                    if (!curDirFileSha.equals(comFileSha)) {
-                        Main.exitWithMessage("There is an untracked file in"
-                                + " the way; delete it, or add and commit it"
-                                + " first.");
-                    }
-                }
-            }
-            for (String fileName: branchHeadCom.getShaToName().values()) {
-                checkoutFile(sha, fileName);
-            }
-            for (File workDirFile: currDirFiles) {
-                if (!branchHeadCom.contains(workDirFile.getName())) {
-                    workDirFile.delete();
-                }
-            }
+        CheckoutPlan plan = new CheckoutPlan(curBranch, branchHeadCom, _CWD,
+                getStatCache());
+        if (!plan.untrackedInTheWay().isEmpty()) {
+            Main.exitWithMessage("There is an untracked file in"
+                    + " the way; delete it, or add and commit it"
+                    + " first.");
         }
+        plan.apply();
+        event.commitId = sha;
+        event.written = plan.writes().size();
+        event.deleted = plan.deletes().size();
+        event.commit();
     }
     /** Unstages FILENAME for addition and stages it for removal. Deletes
-     * file if tracked in the current commit.*/
+     * file if tracked in the current commit.  FILENAME is taken relative to
+     * the working directory, as for add. */
     public void rm(String fileName) throws IOException {
-        _removeStage.stage(fileName, getCommitFromSha(lastCommitSha()),
-                _addStage);
+        fileName = Utils.workingPath(_CWD, fileName);
+        if (fileName == null) {
+            Main.exitWithMessage("No reason to remove the file.");
+        }
+        getRemStage().stage(fileName, getCommitFromSha(lastCommitSha()),
+                getAddStage());
     }
     /** Starting at the current head commit, displays information about each
      *  commit backwards along the commit tree. */
     public void log() {
-        String curSha = lastCommitSha();
-        Commit curCommit;
-        while (curSha != null) {
-            curCommit = getCommitFromSha(curSha);
-            curCommit.print(curSha);
-            curSha = curCommit.getParent1Sha();
+        CommitGraph graph = getGraph();
+        int pos = graph.position(lastCommitSha());
+        while (pos != CommitGraph.NONE) {
+            String curSha = graph.sha(pos);
+            getCommitFromSha(curSha).print(curSha);
+            pos = graph.parent1(pos);
         }
     }
-    /** Displays information about all commits every made. */
+    /** Displays information about all commits ever made, newest first. */
     public void globalLog() {
-        Commit commit;
-        for (String sha: _commitTree.keySet()) {
-            commit = getCommitFromSha(sha);
-            commit.print(sha);
+        globalLog(Integer.MAX_VALUE, 0, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+    /** Displays information about the commits made between SINCE and
+     *  UNTIL (in milliseconds since the epoch, inclusive), newest first,
+     *  leaving out the first SKIP of them and stopping after MAXCOUNT.
+     *  Commits are taken in date order from the commit graph and read one
+     *  at a time, and output is buffered, except that the first commit is
+     *  shown as soon as it is read. */
+    public void globalLog(int maxCount, int skip, long since, long until) {
+        CommitGraph graph = getGraph();
+        PrintStream out = new PrintStream(
+                new BufferedOutputStream(System.out, LOG_BUFFER_SIZE), false);
+        int shown = 0;
+        for (int pos : graph.byDate()) {
+            if (shown >= maxCount || graph.date(pos) < since) {
+                break;
+            }
+            if (graph.date(pos) > until) {
+                continue;
+            }
+            if (skip > 0) {
+                skip -= 1;
+                continue;
+            }
+            String sha = graph.sha(pos);
+            getCommitFromSha(sha).print(sha, out);
+            shown += 1;
+            if (shown == 1) {
+                out.flush();
+            }
         }
+        out.flush();
     }
     /** Print out ids of all commits with commit message MESSAGE. */
     public void find(String message) {
-        boolean found = false;
-        for (String sha: _commitTree.keySet()) {
-            if (getCommitFromSha(sha).getMessage().equals(message)) {
-                System.out.println(sha);
-                found = true;
-            }
+        printFound(getMessageIndex().exact(message));
+    }
+    /** Prints the ids of all commits whose messages contain every word of
+     *  TEXT, ignoring case. */
+    public void findWords(String text) {
+        if (MessageIndex.tokens(text).isEmpty()) {
+            Main.exitWithMessage("Incorrect operands.");
         }
-        if (!found) {
+        printFound(getMessageIndex().words(text));
+    }
+    /** Prints the ids of all commits whose messages contain TEXT. */
+    public void findSubstring(String text) {
+        printFound(getMessageIndex().grep(text));
+    }
+    /** Prints IDS, one per line, or exits with an error if there are
+     *  none. */
+    private void printFound(List<String> ids) {
+        if (ids.isEmpty()) {
             Main.exitWithMessage("Found no commit with that message");
         }
+        for (String id : ids) {
+            System.out.println(id);
+        }
     }
 
     /** Displays what branches currently exist, and marks the current branch
      * with a *. Also displays what files have been staged for addition or
      * removal. */
     public void status() {
+        Events.Status event = new Events.Status();
+        event.begin();
         String[] branches = _branches.list();
         Arrays.sort(branches);
         statusPrint(List.of(branches), "Branches");
 
         List<String> addedFiles =
-                new ArrayList<>(_addStage.getStagedNameToSha().keySet());
+                new ArrayList<>(getAddStage().getStagedNameToSha().keySet());
         Collections.sort(addedFiles);
         statusPrint(addedFiles, "Staged Files");
 
         List<String> removedFiles =
-                new ArrayList<>(_removeStage.getStagedNameToSha().keySet());
+                new ArrayList<>(getRemStage().getStagedNameToSha().keySet());
         Collections.sort(addedFiles);
         statusPrint(removedFiles, "Removed Files");
 
         Commit lastCommit = getCommitFromSha(lastCommitSha());
-        List<String> cwdFiles = new ArrayList<>(Utils.plainFilenamesIn(_CWD));
+        List<String> cwdFiles = Utils.workingFilesIn(_CWD);
         List<String> modified = new ArrayList<>();
-        String cwdFileSha;
+        List<String> trackedFiles = new ArrayList<>();
         for (String fileName: cwdFiles) {
-            cwdFileSha = getShafromFile(Utils.join(_CWD, fileName), fileName);
+            if (lastCommit.contains(fileName)
+                    || getAddStage().isStaged(fileName)) {
+                trackedFiles.add(fileName);
+            }
+        }
+        Map<String, String> cwdShas = getStatCache().shas(trackedFiles);
+        String cwdFileSha;
+        for (String fileName: trackedFiles) {
+            cwdFileSha = cwdShas.get(fileName);
             if ((lastCommit.contains(fileName)
-                    && !_addStage.isStaged(fileName)
-                    && !_removeStage.isStaged(fileName)
+                    && !getAddStage().isStaged(fileName)
+                    && !getRemStage().isStaged(fileName)
                     && !lastCommit.getShafromName(fileName).equals(cwdFileSha))
-                || (_addStage.isStaged(fileName)
-                    && !_addStage.getShafromName(fileName)
+                || (getAddStage().isStaged(fileName)
+                    && !getAddStage().getShafromName(fileName)
                     .equals(cwdFileSha))) {
                 modified.add(fileName + " (modified)");
             }
@@ -454,7 +754,7 @@ public class Repository implements Serializable {
             }
         }
         for (String comFile: lastCommit.getNameToSha().keySet()) {
-            if (!_removeStage.isStaged(comFile)
+            if (!getRemStage().isStaged(comFile)
                     && !Utils.join(_CWD, comFile).exists()) {
                 modified.add(comFile + " (deleted)");
             }
@@ -464,16 +764,21 @@ public class Repository implements Serializable {
         List<String> untrackedFiles = getUntrackedFiles();
         Collections.sort(untrackedFiles);
         statusPrint(untrackedFiles, "Untracked Files");
-
+        event.branch = _currBranch;
+        event.commitId = lastCommitSha();
+        event.tracked = trackedFiles.size();
+        event.modified = modified.size();
+        event.untracked = untrackedFiles.size();
+        event.commit();
     }
     public List<String> getUntrackedFiles() {
         List<String> untrackedFiles = new ArrayList<>();
         Commit lastCommit = getCommitFromSha(lastCommitSha());
-        List<String> cwdFiles = new ArrayList<>(Utils.plainFilenamesIn(_CWD));
+        List<String> cwdFiles = Utils.workingFilesIn(_CWD);
         for (String fileName: cwdFiles) {
-            if ((!_addStage.isStaged(fileName)
+            if ((!getAddStage().isStaged(fileName)
                     && !lastCommit.contains(fileName))
-                    ||  (_removeStage.isStaged(fileName)
+                    ||  (getRemStage().isStaged(fileName)
                     && lastCommit.contains(fileName))) {
                 untrackedFiles.add(fileName);
             }
@@ -495,44 +800,247 @@ public class Repository implements Serializable {
         System.out.println();
     }
     /** Adds a copy of the file FILENAME as it currently exists to the staging
-     *  area. */
+     *  area, under its canonical path relative to the working directory. */
     public void add(String fileName) throws IOException {
-        _addStage.stage(fileName, getCommitFromSha(lastCommitSha()),
-                _removeStage);
+        fileName = Utils.workingPath(_CWD, fileName);
+        if (fileName == null) {
+            Main.exitWithMessage("File does not exist.");
+        }
+        getAddStage().stage(fileName, getCommitFromSha(lastCommitSha()),
+                getRemStage());
     }
     /** Returns the most recent commit's sha-1 on this branch. */
     public String lastCommitSha() {
-        File head = new File(Utils.readContentsAsString(_headFile));
-        return Utils.readContentsAsString(head);
+        File head = new File(Transaction.readRef(_headFile));
+        return Transaction.readRef(head);
     }
-    /** Return the Commit object labeled SHA, reading it from the current
-     *  branch directory. */
+    /** Return the Commit object labeled SHA, which may be abbreviated, or
+     *  null if there is no such commit. */
     public Commit getCommitFromSha(String sha) {
-        if (sha.length() < SHALENGTH) {
-            Set<String> commitShas = _commitTree.keySet();
-            for (String commitID: commitShas) {
-                if (commitID.startsWith(sha)) {
-                    sha = commitID;
-                }
+        CommitCache cache = getCommitCache();
+        if (sha.length() == Utils.UID_LENGTH) {
+            Commit com = cache.get(sha);
+            if (com != null) {
+                return com;
             }
         }
-        File commitLoc = _commitTree.get(sha);
-        if (commitLoc == null) {
+        String id = resolveCommitId(sha);
+        if (id == null) {
             return null;
         }
-        return Utils.readObject(commitLoc, Commit.class);
+        if (!id.equals(sha)) {
+            Commit com = cache.get(id);
+            if (com != null) {
+                return com;
+            }
+        }
+        File file = commitFile(id);
+        long start = Stats.start();
+        Commit com = Compression.readObject(file, Commit.class);
+        Stats.count(Stats.Counter.COMMITS_READ);
+        Stats.stop(Stats.Timer.COMMIT_READ, start);
+        cache.put(id, com, file.length());
+        return com;
+    }
+    /** Return the cache of commits read or written in this command. */
+    public CommitCache getCommitCache() {
+        if (_commitCache == null) {
+            _commitCache = new CommitCache(CommitCache.MAX_ENTRIES,
+                    CommitCache.MAX_BYTES);
+        }
+        return _commitCache;
+    }
+    /** Use CACHE, which may hold commits read by an earlier command, as
+     *  the cache of commits. */
+    public void setCommitCache(CommitCache cache) {
+        _commitCache = cache;
+    }
+    /** Return the full id of the commit whose id starts with PREFIX, or
+     *  null if there is none.  Exits with an error if several do. */
+    public String resolveCommitId(String prefix) {
+        ShaIndex commits = getCommits();
+        int[] range = commits.range(prefix);
+        if (range[1] - range[0] > 1) {
+            Main.exitWithMessage("Ambiguous commit id.");
+        }
+        return range[0] < range[1] ? commits.sha(range[0]) : null;
+    }
+    /** Return the file holding the commit with full id SHA. */
+    private File commitFile(String sha) {
+        ShaIndex commits = getCommits();
+        return Utils.join(_branches,
+                _commitBranches.get(commits.value(commits.find(sha))), sha);
+    }
+    /** Records the commit with id SHA, stored in the directory of BRANCH, in
+     *  the commit table. */
+    private void addCommit(String sha, String branch) {
+        getCommits();
+        int num = _commitBranches.indexOf(branch);
+        if (num < 0) {
+            num = _commitBranches.size();
+            _commitBranches.add(branch);
+        }
+        _commits.add(sha, num);
+        _commitsDirty = true;
+    }
+    /** Return the cache of working file ids. */
+    public StatCache getStatCache() {
+        return StatCache.open(_CWD);
     }
     /** Return sha-1 code from the contents of the file FILEPATH with
-     *  name NAME. */
+     *  name NAME.  Callers that may see the same unchanged file again
+     *  should go through getStatCache instead. */
     public static String getShafromFile(File filePath, String name) {
-        byte[] contents = Utils.readContents(filePath);
-        return Utils.sha1(contents, name);
+        Events.Hash event = new Events.Hash();
+        event.begin();
+        String sha = Utils.sha1(filePath, name);
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = filePath.getPath();
+            event.bytes = filePath.length();
+            event.commit();
+        }
+        return sha;
     }
 
-    /** Write serialized repo into _repoSavePath for persistence. */
-    public void serialize() throws IOException {
-        _repoSavePath.createNewFile();
-        Utils.writeObject(_repoSavePath, this);
+    /** Writes the repository metadata to .gitlet/meta if anything in it
+     *  changed during this command.  Sections that were never read are
+     *  copied unchanged. */
+    public void save() throws IOException {
+        boolean stagingDirty = _addStage != null
+                && (_addStage.isDirty() || _removeStage.isDirty());
+        if (_meta == null || !(_coreDirty || stagingDirty || _commitsDirty)) {
+            return;
+        }
+        LinkedHashMap<Byte, byte[]> sections = new LinkedHashMap<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(_currBranch);
+        out.writeBoolean(_initialized);
+        sections.put(MetaFile.CORE, bytes.toByteArray());
+
+        if (_addStage == null) {
+            copySection(MetaFile.STAGING, sections);
+        } else {
+            bytes.reset();
+            _addStage.write(out);
+            _removeStage.write(out);
+            sections.put(MetaFile.STAGING, bytes.toByteArray());
+        }
+
+        if (_commits == null) {
+            copySection(MetaFile.COMMITS, sections);
+        } else {
+            bytes.reset();
+            writeCommits(out);
+            sections.put(MetaFile.COMMITS, bytes.toByteArray());
+        }
+        _meta.write(sections);
+        _coreDirty = _commitsDirty = false;
+    }
+    /** Adds the section tagged TAG of the existing metadata, if there is
+     *  one, to SECTIONS unchanged. */
+    private void copySection(byte tag, Map<Byte, byte[]> sections) {
+        byte[] data = _meta.sectionBytes(tag);
+        if (data != null) {
+            sections.put(tag, data);
+        }
+    }
+    /** Reads the current branch and flags from the metadata. */
+    private void readCore() throws IOException {
+        DataInputStream in = _meta.section(MetaFile.CORE);
+        if (in == null) {
+            return;
+        }
+        _currBranch = in.readUTF();
+        _initialized = in.readBoolean();
+        _head = Utils.join(_refs, _currBranch);
+    }
+    /** Writes the commit table to OUT: the names of the branch directories
+     *  commits are stored in, then the id and branch number of each
+     *  commit, sorted by id. */
+    private void writeCommits(DataOutputStream out) throws IOException {
+        out.writeInt(_commitBranches.size());
+        for (String branch: _commitBranches) {
+            out.writeUTF(branch);
+        }
+        out.writeInt(_commits.size());
+        out.write(_commits.toBytes());
+    }
+    /** Returns the table of all commits, reading it if necessary. */
+    private ShaIndex getCommits() {
+        if (_commits == null) {
+            _commits = new ShaIndex();
+            _commitBranches = new ArrayList<>();
+            DataInputStream in = _meta.section(MetaFile.COMMITS);
+            if (in != null) {
+                try {
+                    for (int n = in.readInt(); n > 0; n -= 1) {
+                        _commitBranches.add(in.readUTF());
+                    }
+                    int count = in.readInt();
+                    byte[] records = new byte[count * ShaIndex.RECORD_SIZE];
+                    in.readFully(records);
+                    _commits = new ShaIndex(records, count);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return _commits;
+    }
+    /** Reads both staging areas from the metadata. */
+    private void loadStaging() {
+        _addStage = new Staging("add", _gitletFolder, _CWD);
+        _removeStage = new Staging("remove", _gitletFolder, _CWD);
+        DataInputStream in = _meta.section(MetaFile.STAGING);
+        if (in != null) {
+            try {
+                _addStage.read(in);
+                _removeStage.read(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+    /** Converts this repository, just read from the file LEGACY written by
+     *  an earlier version, to the current format.  Staged files are moved
+     *  into the object store, and LEGACY and the old staging directories
+     *  are removed once the new metadata is written. */
+    private void migrate(File legacy) throws IOException {
+        Staging oldAdd = _addStage, oldRemove = _removeStage;
+        _addStage = new Staging("add", _gitletFolder, _CWD);
+        _removeStage = new Staging("remove", _gitletFolder, _CWD);
+        File addDir = Utils.join(_gitletFolder, "add");
+        for (Map.Entry<String, String> e:
+                 oldAdd.getStagedNameToSha().entrySet()) {
+            File staged = Utils.join(addDir, e.getValue());
+            if (staged.isFile()) {
+                getStore().put(e.getValue(), staged);
+            }
+            _addStage.addToMap(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e:
+                 oldRemove.getStagedNameToSha().entrySet()) {
+            _removeStage.addToMap(e.getKey(), e.getValue());
+        }
+        _commits = new ShaIndex();
+        _commitBranches = new ArrayList<>();
+        for (Map.Entry<String, File> e: _commitTree.entrySet()) {
+            addCommit(e.getKey(), e.getValue().getParentFile().getName());
+        }
+        _commitTree = null;
+        _head = Utils.join(_refs, _currBranch);
+        _coreDirty = true;
+        getStore().flush();
+        save();
+        Transaction.commit();
+        legacy.delete();
+        for (String dir: new String[] {"add", "remove"}) {
+            File stageDir = Utils.join(_gitletFolder, dir);
+            deleteDirFiles(stageDir);
+            stageDir.delete();
+        }
     }
     /** Delete all files in directory FOLDER. */
     public static void deleteDirFiles(File folder) {
@@ -543,14 +1051,14 @@ public class Repository implements Serializable {
             }
         }
     }
-    /** Reads the contents of File A and writes to File B. */
-    public static void writeFromFile(File a, File b) {
-        Utils.writeContents(b, Utils.readContents(a));
-    }
     /** Clear add and remove staging. */
     public void clearStaging() {
-        _addStage.clear();
-        _removeStage.clear();
+        getAddStage().clear();
+        getRemStage().clear();
+    }
+    /** Return the store holding the repository's blobs. */
+    public ObjectStore getStore() {
+        return ObjectStore.open(_objects);
     }
     /** Return directory where commit files are stored. */
     public File getCommitPath() {
@@ -562,10 +1070,16 @@ public class Repository implements Serializable {
     }
     /** Return the repo's addStage. */
     public Staging getAddStage() {
+        if (_addStage == null) {
+            loadStaging();
+        }
         return _addStage;
     }
     /** Return the repo's removeStage. */
     public Staging getRemStage() {
+        if (_removeStage == null) {
+            loadStaging();
+        }
         return _removeStage;
     }
     /** Returns if S1 and S2 are equal, overriding for null comparisons.*/
@@ -580,9 +1094,8 @@ public class Repository implements Serializable {
     public void diff(String branchName) {
         checkBranchValid(branchName);
         Diff diffChecker;
-        Commit com = getCommitFromSha(Utils.readContentsAsString(
+        Commit com = getCommitFromSha(Transaction.readRef(
                 Utils.join(_refs, branchName)));
-        File[] cwdFiles = _CWD.listFiles();
         File cwdFile;
         String cwdFileName;
         ArrayList<String> branchFiles =
@@ -592,8 +1105,14 @@ public class Repository implements Serializable {
             cwdFile = Utils.join(_CWD, fileName);
 
             diffChecker = new Diff();
-            diffChecker.setSequences(com.getFileFromSha(com.
-                    getShafromName(fileName)), cwdFile);
+            diffChecker.setAlgorithm(_diffAlgorithm);
+            try (InputStream committed = com.openFile(fileName);
+                 InputStream working = cwdFile.isFile()
+                     ? Files.newInputStream(cwdFile.toPath()) : null) {
+                diffChecker.setSequences(committed, working);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
             if (diffChecker.diffs().length != 0) {
                 cwdFileName = "b/" + fileName;
                 if (!cwdFile.exists()) {
@@ -614,9 +1133,9 @@ public class Repository implements Serializable {
         checkBranchValid(branch2);
 
         Diff diffChecker;
-        Commit com1 = getCommitFromSha(Utils.readContentsAsString(
+        Commit com1 = getCommitFromSha(Transaction.readRef(
                 Utils.join(_refs, branch1)));
-        Commit com2 = getCommitFromSha(Utils.readContentsAsString(
+        Commit com2 = getCommitFromSha(Transaction.readRef(
                 Utils.join(_refs, branch2)));
 
         Set<String> branchFilesSet =
@@ -637,9 +1156,13 @@ public class Repository implements Serializable {
             }
 
             diffChecker = new Diff();
-            diffChecker.setSequences(com1.getFileFromSha(com1.
-                    getShafromName(fileName)), com2.getFileFromSha(com2.
-                    getShafromName(fileName)));
+            diffChecker.setAlgorithm(_diffAlgorithm);
+            try (InputStream in1 = com1.openFile(fileName);
+                 InputStream in2 = com2.openFile(fileName)) {
+                diffChecker.setSequences(in1, in2);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
 
             if (diffChecker.diffs().length != 0) {
                 System.out.printf("diff --git %s %s%n", b1FileName,
@@ -650,9 +1173,13 @@ public class Repository implements Serializable {
             }
         }
     }
+    /** Use ALGORITHM for subsequent diffs. */
+    public void setDiffAlgorithm(DiffEngine.Algorithm algorithm) {
+        _diffAlgorithm = algorithm;
+    }
     /** Exits with error if BRANCH is not found. */
     private void checkBranchValid(String branch) {
-        if (!Utils.join(_refs, branch).exists()) {
+        if (!Transaction.refExists(Utils.join(_refs, branch))) {
             Main.exitWithMessage("A branch with that name does not exist.");
         }
     }
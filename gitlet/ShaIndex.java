@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** A sorted table of binary SHA-1 ids, each with an int value, that
+ *  resolves full ids and abbreviated (prefix) ids by binary search.  The
+ *  table is kept as fixed-width records (the UID_BYTES-byte id followed
+ *  by the value as a big-endian int) in one byte array, which is also its
+ *  on-disk form, so loading it involves no per-entry work.
+ */
+class ShaIndex {
+
+    /** Size of one record. */
+    static final int RECORD_SIZE = Utils.UID_BYTES + 4;
+
+    /** An empty index. */
+    ShaIndex() {
+        this(new byte[16 * RECORD_SIZE], 0);
+    }
+
+    /** An index whose first COUNT records are in DATA, sorted by id.  The
+     *  index takes ownership of DATA. */
+    ShaIndex(byte[] data, int count) {
+        _data = data;
+        _count = count;
+    }
+
+    /** Return the number of ids in the index. */
+    int size() {
+        return _count;
+    }
+
+    /** Return the id of record K. */
+    String sha(int k) {
+        return Utils.bytesToSha(_data, k * RECORD_SIZE);
+    }
+
+    /** Return the value of record K. */
+    int value(int k) {
+        int p = k * RECORD_SIZE + Utils.UID_BYTES;
+        return ((_data[p] & 0xff) << 24) | ((_data[p + 1] & 0xff) << 16)
+            | ((_data[p + 2] & 0xff) << 8) | (_data[p + 3] & 0xff);
+    }
+
+    /** Return the position of the record whose id is exactly SHA, or -1 if
+     *  there is none. */
+    int find(String sha) {
+        if (sha.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        int[] range = range(sha);
+        return range[0] < range[1] ? range[0] : -1;
+    }
+
+    /** Return the range [LO, HI) of positions of records whose ids start
+     *  with the hexadecimal string PREFIX, as the array {LO, HI}.  The
+     *  range is empty if none does or PREFIX is not hexadecimal. */
+    int[] range(String prefix) {
+        if (prefix.length() > Utils.UID_LENGTH) {
+            return new int[] { 0, 0 };
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (Character.digit(prefix.charAt(i), 16) < 0) {
+                return new int[] { 0, 0 };
+            }
+        }
+        int lo = bound(prefix, 0, false);
+        return new int[] { lo, bound(prefix, lo, true) };
+    }
+
+    /** Add the id SHA with value VALUE, keeping the records sorted.  Does
+     *  nothing if SHA is already present. */
+    void add(String sha, int value) {
+        int k = bound(sha, 0, false);
+        if (k < _count && sha(k).equals(sha)) {
+            return;
+        }
+        if ((_count + 1) * RECORD_SIZE > _data.length) {
+            _data = Arrays.copyOf(_data,
+                                  Math.max(2 * _data.length,
+                                           (_count + 1) * RECORD_SIZE));
+        }
+        int p = k * RECORD_SIZE;
+        System.arraycopy(_data, p, _data, p + RECORD_SIZE,
+                         (_count - k) * RECORD_SIZE);
+        System.arraycopy(Utils.shaToBytes(sha), 0, _data, p,
+                         Utils.UID_BYTES);
+        p += Utils.UID_BYTES;
+        _data[p] = (byte) (value >>> 24);
+        _data[p + 1] = (byte) (value >>> 16);
+        _data[p + 2] = (byte) (value >>> 8);
+        _data[p + 3] = (byte) value;
+        _count += 1;
+    }
+
+    /** Return the records of this index in their on-disk form. */
+    byte[] toBytes() {
+        return Arrays.copyOf(_data, _count * RECORD_SIZE);
+    }
+
+    /** Return the first position at or after FROM whose id, truncated to
+     *  the length of PREFIX, is not less than PREFIX (or, if AFTER, is
+     *  greater than PREFIX). */
+    private int bound(String prefix, int from, boolean after) {
+        int lo = from, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = comparePrefix(mid, prefix);
+            if (c < 0 || (after && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compare the first PREFIX.length() hex digits of the id of record K
+     *  with the hexadecimal string PREFIX. */
+    private int comparePrefix(int k, String prefix) {
+        int p = k * RECORD_SIZE;
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int b = _data[p + i / 2] & 0xff;
+            int digit = i % 2 == 0 ? b >> 4 : b & 0xf;
+            int c = digit - Character.digit(prefix.charAt(i), 16);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** The records, sorted by id.  Only the first _count are in use. */
+    private byte[] _data;
+    /** Number of records. */
+    private int _count;
+}
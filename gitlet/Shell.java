@@ -0,0 +1,332 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** The persistent modes of Gitlet, which run many commands in one process
+ *  so that each command pays neither for starting the JVM nor for reading
+ *  the repository again.
+ *
+ *      gitlet shell          runs the commands read from the standard
+ *                            input, one per line, until end of input or
+ *                            a line reading "exit".
+ *      gitlet serve          runs the commands sent to the Unix-domain
+ *                            socket .gitlet/gitlet.sock, one command per
+ *                            connection, until one sends "exit".
+ *      gitlet client ARGS    sends the command ARGS to the server and
+ *                            prints its output, or runs the command
+ *                            itself if no server is running.
+ *
+ *  A command is sent to the server as a single line, so any client that
+ *  can write a line to the socket and read to end of file will do.  Lines
+ *  are split into words at whitespace; single or double quotes group
+ *  words, and a backslash outside single quotes makes the next character
+ *  literal.
+ *
+ *  The repository, object stores, stat caches and commit cache stay in
+ *  memory between commands.  Before each command, the files in .gitlet
+ *  that commands change (the metadata, HEAD, refs, packs, commit graph,
+ *  message index and stat cache) are compared with how the previous
+ *  command left them; if another process has changed any of them,
+ *  everything is read again.  A command that ends with an error message
+ *  leaves the repository unsaved, as it does when run alone, so the
+ *  repository is also read again after one, keeping only the commits
+ *  already cached, which never change.
+ */
+class Shell {
+
+    /** The commands that start a persistent mode. */
+    static final List<String> COMMANDS = List.of("shell", "serve", "client");
+    /** Name of the server's socket in .gitlet. */
+    static final String SOCKET = "gitlet.sock";
+    /** Files of .gitlet whose changes cause the repository to be reread. */
+    static final List<String> WATCHED = List.of("meta", "HEAD",
+            "commit-graph", "messages", "index");
+    /** Directories of .gitlet whose entries cause the repository to be
+     *  reread when they change. */
+    static final List<String> WATCHED_DIRS = List.of("refs", "objects/pack");
+
+    /** Thrown by Main.exitWithMessage to end a command run by a Shell. */
+    static class Exit extends RuntimeException {
+        /** Serial version, since exceptions are serializable. */
+        private static final long serialVersionUID = 1L;
+
+        /** An Exit, which needs neither message nor stack trace. */
+        Exit() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** Return true iff a Shell is running a command. */
+    static boolean active() {
+        return _active;
+    }
+
+    /** Runs the persistent-mode command ARGS in the working directory
+     *  CWD. */
+    static void main(File cwd, String[] args) throws IOException {
+        if (args[0].equals("client")) {
+            client(cwd, Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length != 1) {
+            Main.exitWithMessage("Incorrect operands.");
+        }
+        Shell shell = new Shell(cwd);
+        if (args[0].equals("shell")) {
+            shell.readCommands(System.in);
+        } else if (!Utils.join(cwd, ".gitlet").isDirectory()) {
+            Main.exitWithMessage("Not in an initialized Gitlet directory.");
+        } else {
+            shell.serve();
+        }
+    }
+
+    /** A shell for the repository whose working directory is CWD. */
+    Shell(File cwd) {
+        _cwd = cwd;
+        _mode = Transaction.mode();
+        _stats = Stats.format();
+        _jfr = Events.recordingFile();
+    }
+
+    /** Run each command read from IN, writing output to the standard
+     *  output. */
+    void readCommands(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null;
+             line = reader.readLine()) {
+            List<String> words = split(line);
+            if (words.equals(List.of("exit"))) {
+                break;
+            } else if (!words.isEmpty()) {
+                execute(words, System.out);
+            }
+        }
+    }
+
+    /** Run the commands sent to the socket of this repository. */
+    void serve() throws IOException {
+        Path socket = Utils.join(_cwd, ".gitlet", SOCKET).toPath();
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    String line = new BufferedReader(new InputStreamReader(
+                        Channels.newInputStream(client),
+                        StandardCharsets.UTF_8)).readLine();
+                    List<String> words =
+                        line == null ? List.of() : split(line);
+                    if (words.equals(List.of("exit"))) {
+                        break;
+                    } else if (!words.isEmpty()) {
+                        execute(words, new PrintStream(
+                            new BufferedOutputStream(
+                                Channels.newOutputStream(client)),
+                            false, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /** Send the command ARGS to the server for the repository in CWD and
+     *  copy its output to the standard output, or run the command here if
+     *  no server is listening. */
+    static void client(File cwd, String[] args) throws IOException {
+        if (args.length == 0) {
+            Main.exitWithMessage("Please enter a command.");
+        }
+        Path socket = Utils.join(cwd, ".gitlet", SOCKET).toPath();
+        SocketChannel channel = null;
+        if (Files.exists(socket)) {
+            try {
+                channel = SocketChannel.open(UnixDomainSocketAddress.of(
+                                                 socket));
+            } catch (IOException excp) {
+                channel = null;
+            }
+        }
+        if (channel == null) {
+            Main.run(Repository.load(cwd), cwd, args);
+            return;
+        }
+        try (SocketChannel server = channel) {
+            StringBuilder line = new StringBuilder();
+            for (String arg : args) {
+                line.append(line.length() == 0 ? "" : " ").append(quote(arg));
+            }
+            OutputStream out = Channels.newOutputStream(server);
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            server.shutdownOutput();
+            Channels.newInputStream(server).transferTo(System.out);
+            System.out.flush();
+        }
+    }
+
+    /** Return the words of LINE. */
+    static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+            } else {
+                word.append(c);
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /** Return WORD quoted so that split reads it back as one word. */
+    static String quote(String word) {
+        return '"' + word.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /** Run the command WORDS, writing its output to OUT. */
+    void execute(List<String> words, PrintStream out)
+        throws IOException {
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        _active = true;
+        try {
+            if (!fingerprint().equals(_fingerprint)) {
+                reload(true);
+            }
+            Transaction.setMode(_mode);
+            Stats.setFormat(_stats);
+            Events.setRecordingFile(_jfr);
+            String[] args = Main.globalOptions(words.toArray(new String[0]));
+            Main.run(_repo, _cwd, args);
+        } catch (Exit excp) {
+            reload(false);
+        } catch (IOException | RuntimeException excp) {
+            out.println(excp.getMessage());
+            Transaction.abort();
+            Stats.end();
+            Events.end();
+            reload(true);
+        } finally {
+            _active = false;
+            out.flush();
+            System.setOut(stdout);
+        }
+        _fingerprint = fingerprint();
+    }
+
+    /** Read the repository again.  If ALL, forget the open object stores,
+     *  stat caches and cached commits too. */
+    private void reload(boolean all) throws IOException {
+        CommitCache commits = all || _repo == null
+            ? null : _repo.getCommitCache();
+        if (all) {
+            ObjectStore.closeAll();
+            StatCache.closeAll();
+        }
+        _repo = Repository.load(_cwd);
+        if (commits != null) {
+            _repo.setCommitCache(commits);
+        }
+    }
+
+    /** Return a description of the identity, size and modification time
+     *  of the WATCHED files and of the entries of the WATCHED_DIRS, which
+     *  changes whenever any of them does. */
+    private String fingerprint() {
+        File gitlet = Utils.join(_cwd, ".gitlet");
+        StringBuilder result = new StringBuilder();
+        for (String name : WATCHED) {
+            describe(Utils.join(gitlet, name), result);
+        }
+        for (String dir : WATCHED_DIRS) {
+            String[] names = Utils.join(gitlet, dir).list();
+            if (names != null) {
+                Arrays.sort(names);
+                for (String name : names) {
+                    describe(Utils.join(gitlet, dir, name), result);
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /** Append the identity, size and modification time of FILE, if it
+     *  exists, to RESULT. */
+    private static void describe(File file, StringBuilder result) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(
+                file.toPath(), BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+            result.append(file.getPath()).append(' ')
+                .append(attrs.fileKey()).append(' ')
+                .append(attrs.size()).append(' ')
+                .append(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS))
+                .append('\n');
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** True iff a Shell is running a command. */
+    private static boolean _active;
+
+    /** The working directory. */
+    private final File _cwd;
+    /** The durability mode each command starts with. */
+    private final Transaction.Mode _mode;
+    /** The Stats format each command starts with. */
+    private final String _stats;
+    /** The file to which each command's Events are recorded, or null. */
+    private final File _jfr;
+    /** The repository, as the last command left it. */
+    private Repository _repo;
+    /** The fingerprint of .gitlet as the last command left it, or null
+     *  before the first command. */
+    private String _fingerprint;
+}
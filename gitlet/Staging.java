@@ -1,27 +1,31 @@
 package gitlet;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.TreeSet;
 
 public class Staging implements Serializable {
-    /** Directory for staging files. */
-    private File _stagePath;
+    /** Serial version of the staging areas that were saved inside
+     *  .gitlet/repository, kept so that those can still be migrated. */
+    private static final long serialVersionUID = 5885033497997627239L;
+    /** Blob storage directory. */
+    private File _objects;
     /** Directory where repository is created. */
     private File _CWD;
     /** HashMap of file name to Sha-1 code. */
     private HashMap<String, String> _nameToSha = new HashMap<>();
-    /** HashMap of file name to staged file path. */
-    private HashMap<String, File> _nameToPath = new HashMap<>();
     /** HashMap of Sha-1 code to staged file name. */
     private HashMap<String, String> _shaToName = new HashMap<>();
-    /** HashMap of Sha-1 code to file path. */
-    private HashMap<String, File> _shaToFile = new HashMap<>();
     /** Type of staging area: add or remove. */
     private String _type;
     /** Type of opposite staging area: add or remove. */
     private String _oType;
+    /** True iff this area changed since it was read or written. */
+    private transient boolean _dirty;
 
     public Staging(String type, File dir, File cwd) {
         _type = type;
@@ -30,9 +34,8 @@ public class Staging implements Serializable {
         } else {
             _oType = "add";
         }
-        _stagePath = Utils.join(dir, type);
+        _objects = Utils.join(dir, "objects");
         _CWD = cwd;
-        _stagePath.mkdir();
     }
 
     /** Stage FILENAME to this staging area for RECCOMMIT with the staging
@@ -42,19 +45,20 @@ public class Staging implements Serializable {
         File filePath = Utils.join(_CWD, fileName);
         String fileSha = null;
         if (_type.equals("add")) {
-            if (!filePath.exists()) {
+            if (!filePath.isFile()) {
                 Main.exitWithMessage("File does not exist.");
             }
-            fileSha = Repository.getShafromFile(filePath, fileName);
+            fileSha = StatCache.open(_CWD).sha(fileName);
             other.unstage(fileName, fileSha);
-            if (recCommit.contains(fileSha)) {
+            if (fileSha.equals(recCommit.getShafromName(fileName))) {
                 unstage(fileName, fileSha);
             } else {
-                copyFile(fileSha, filePath, fileName);
+                copyFile(fileSha, filePath, fileName,
+                         recCommit.getShafromName(fileName));
             }
         } else {
             if (!recCommit.contains(fileName)
-                    && !other.getStagedNameToPath().containsKey(fileName)) {
+                    && !other.isStaged(fileName)) {
                 Main.exitWithMessage("No reason to remove the file.");
             } else {
                 fileSha = other.getShafromName(fileName);
@@ -62,9 +66,8 @@ public class Staging implements Serializable {
                     fileSha = recCommit.getShafromName(fileName);
                 }
                 if (recCommit.contains(fileName)) {
-                    addToMap(fileName, fileSha, Utils.join(_stagePath,
-                            fileSha));
-                    Utils.restrictedDelete(filePath);
+                    addToMap(fileName, fileSha);
+                    Utils.restrictedDelete(_CWD, fileName);
                 }
                 other.unstage(fileName, fileSha);
             }
@@ -73,56 +76,82 @@ public class Staging implements Serializable {
     }
     /** Clear staging area. */
     public void clear() {
-        Repository.deleteDirFiles(_stagePath);
+        if (!_nameToSha.isEmpty()) {
+            _dirty = true;
+        }
         _nameToSha.clear();
-        _shaToFile.clear();
         _shaToName.clear();
-        _nameToPath.clear();
     }
 
-    /** Unstage FILENAME stored in STAGEDFILEPATH with Sha-1 id SHA. */
+    /** Unstage FILENAME with Sha-1 id SHA.  Its blob stays in the object
+     *  store. */
     public void unstage(String fileName, String sha) {
         removeFromMap(fileName, sha);
-        Utils.join(_stagePath, sha).delete();
     }
-    /** Copies FILENAME with Sha-1 SHA from FILEPATH to staging area, replacing
-     * contents if it exists. */
-    public void copyFile(String sha, File filePath, String fileName)
-            throws IOException {
-        File stagedFilePath = Utils.join(_stagePath, sha);
+    /** Copies FILENAME with Sha-1 SHA from FILEPATH into the object store
+     * and stages it, replacing any previously staged version.  BASESHA is
+     * the id of the previous revision of FILENAME, or null, against which
+     * the store may keep the new blob as a delta. */
+    public void copyFile(String sha, File filePath, String fileName,
+                         String baseSha) throws IOException {
         removeFromMap(fileName, sha);
-        if (!stagedFilePath.exists()) {
-            stagedFilePath.createNewFile();
-        }
-        addToMap(fileName, sha, stagedFilePath);
-        Repository.writeFromFile(filePath, stagedFilePath);
+        ObjectStore.open(_objects).put(sha, filePath, baseSha);
+        addToMap(fileName, sha);
+    }
+    /** Stages FILENAME as the blob with Sha-1 SHA, which must already be
+     *  in the object store, replacing any previously staged version. */
+    public void stageBlob(String fileName, String sha) {
+        removeFromMap(fileName, sha);
+        addToMap(fileName, sha);
     }
     /** Remove FILENAME with SHA-1 SHA from staging HashMaps. */
     public void removeFromMap(String fileName, String sha) {
         String oldSha = _nameToSha.remove(fileName);
-        _shaToFile.remove(oldSha);
-        _shaToName.remove(oldSha);
-        _nameToPath.remove(fileName);
+        if (oldSha != null) {
+            _shaToName.remove(oldSha);
+            _dirty = true;
+        }
     }
-    /** Add FILENAME with SHA-1 SHA and file path PATH to Staging HashMaps. */
-    public void addToMap(String fileName, String sha, File path) {
+    /** Add FILENAME with SHA-1 SHA to Staging HashMaps. */
+    public void addToMap(String fileName, String sha) {
         _nameToSha.put(fileName, sha);
-        _shaToFile.put(sha, path);
         _shaToName.put(sha, fileName);
-        _nameToPath.put(fileName, path);
+        _dirty = true;
     }
     /** Return Sha-1 code from FILENAME. */
     public String getShafromName(String fileName) {
         return _nameToSha.get(fileName);
     }
-    /** Returns the hashmap of file names to their file paths. */
-    public HashMap<String, File> getStagedNameToPath() {
-        return _nameToPath;
-    }
     /** Returns the hashmap of file names to their Sha id. */
     public HashMap<String, String> getStagedNameToSha() {
         return _nameToSha;
     }
+    /** Returns whether this area changed since it was read or written. */
+    public boolean isDirty() {
+        return _dirty;
+    }
+    /** Writes the staged names and ids to OUT. */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(_nameToSha.size());
+        for (String fileName: new TreeSet<>(_nameToSha.keySet())) {
+            out.writeUTF(fileName);
+            out.write(Utils.shaToBytes(_nameToSha.get(fileName)));
+        }
+        _dirty = false;
+    }
+    /** Replaces the contents of this area with names and ids read from
+     *  IN, as written by write. */
+    public void read(DataInputStream in) throws IOException {
+        _nameToSha.clear();
+        _shaToName.clear();
+        byte[] id = new byte[Utils.UID_BYTES];
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String fileName = in.readUTF();
+            in.readFully(id);
+            addToMap(fileName, Utils.bytesToSha(id, 0));
+        }
+        _dirty = false;
+    }
     /** Returns whether FILENAME is staged. */
     public boolean isStaged(String fileName) {
         return getShafromName(fileName) != null;
@@ -0,0 +1,339 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/** A cache of the SHA-1 ids of working files, kept in .gitlet/index, so
+ *  that files that have not changed since they were last hashed are
+ *  recognized by their size, modification time and inode alone.
+ *
+ *  A file modified in the same clock tick in which the index was written
+ *  could have changed after it was hashed without its modification time
+ *  showing it.  Such "racy" entries, whose modification time is not
+ *  strictly earlier than the time the index was written, are never
+ *  trusted and are rehashed on each use.  Since each write of the index
+ *  moves that time forward, a racy entry that has not been rehashed is
+ *  "smudged" when the index is written, as git does: its size is
+ *  recorded as SMUDGED, which matches no file, so that it stays
+ *  untrusted until it is hashed again.
+ *
+ *  A cache may be used from several threads at once.  Batches of files
+ *  are hashed in parallel by shas, on a work-stealing pool whose
+ *  parallelism is taken from the system property gitlet.threads or else
+ *  the environment variable GITLET_THREADS, and defaults to the number of
+ *  available processors.
+ */
+class StatCache {
+
+    /** Magic number at the start of the index ("GSTC"). */
+    static final int MAGIC = 0x47535443;
+    /** Current version of the index format. */
+    static final int VERSION = 1;
+    /** Size recorded for a smudged entry. */
+    static final long SMUDGED = -1;
+
+    /** Return the cache for the working directory WORKDIR. */
+    static StatCache open(File workDir) {
+        StatCache cache = CACHES.get(workDir);
+        if (cache == null) {
+            cache = new StatCache(workDir);
+            CACHES.put(workDir, cache);
+        }
+        return cache;
+    }
+
+    /** Write every cache that changed during this command. */
+    static void flushAll() {
+        for (StatCache cache : CACHES.values()) {
+            cache.flush();
+        }
+    }
+
+    /** Write and forget every open cache, so that caches are read anew
+     *  when next used. */
+    static void closeAll() {
+        flushAll();
+        CACHES.clear();
+    }
+
+    /** A cache for the files in WORKDIR. */
+    private StatCache(File workDir) {
+        _workDir = workDir;
+        _indexFile = Utils.join(workDir, ".gitlet", "index");
+        _entries = new ConcurrentHashMap<>();
+        if (_indexFile.isFile()) {
+            load();
+        }
+    }
+
+    /** Return the SHA-1 id of the working file NAME, as computed by
+     *  Repository.getShafromFile, rehashing it only if it may have changed
+     *  since it was last hashed. */
+    String sha(String name) {
+        File file = Utils.join(_workDir, name);
+        Entry current = stat(file.toPath());
+        Entry cached = _entries.get(name);
+        if (cached != null && current != null && cached.matches(current)
+            && cached.mtime < _writtenAt) {
+            Stats.count(Stats.Counter.STAT_CACHE_HITS);
+            return cached.sha;
+        }
+        String sha = Repository.getShafromFile(file, name);
+        if (current != null) {
+            current.sha = sha;
+            current.hashed = true;
+            _entries.put(name, current);
+            _dirty = true;
+        }
+        return sha;
+    }
+
+    /** Return the SHA-1 id of the working file NAME if its size,
+     *  modification time and inode show it to be unchanged since it was
+     *  last hashed, and otherwise null.  Never reads the file. */
+    String cachedSha(String name) {
+        Entry cached = _entries.get(name);
+        if (cached == null || cached.mtime >= _writtenAt) {
+            return null;
+        }
+        Entry current = stat(Utils.join(_workDir, name).toPath());
+        if (current == null || !cached.matches(current)) {
+            return null;
+        }
+        Stats.count(Stats.Counter.STAT_CACHE_HITS);
+        return cached.sha;
+    }
+
+    /** Return the SHA-1 ids of the working files NAMES, as a map from
+     *  name to id, as for sha.  The files are stat'ed and, where needed,
+     *  hashed in parallel. */
+    Map<String, String> shas(Collection<String> names) {
+        ConcurrentHashMap<String, String> result = new ConcurrentHashMap<>();
+        if (names.size() < 2 || parallelism() < 2) {
+            for (String name : names) {
+                result.put(name, sha(name));
+            }
+            return result;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism());
+        try {
+            pool.submit(() -> names.parallelStream()
+                        .forEach(name -> result.put(name, sha(name)))).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** Return the number of threads used to hash files. */
+    static int parallelism() {
+        if (_parallelism == 0) {
+            String value = System.getProperty("gitlet.threads",
+                                              System.getenv("GITLET_THREADS"));
+            _parallelism = Runtime.getRuntime().availableProcessors();
+            if (value != null) {
+                try {
+                    _parallelism = Math.max(1, Integer.parseInt(value));
+                } catch (NumberFormatException excp) {
+                    _parallelism =
+                        Runtime.getRuntime().availableProcessors();
+                }
+            }
+        }
+        return _parallelism;
+    }
+
+    /** Record that the working file NAME now has id SHA, as when it has
+     *  just been written from a blob with that id. */
+    void update(String name, String sha) {
+        Entry current = stat(Utils.join(_workDir, name).toPath());
+        if (current != null) {
+            current.sha = sha;
+            current.hashed = true;
+            _entries.put(name, current);
+            _dirty = true;
+        }
+    }
+
+    /** Write the index if anything changed, first smudging the racy
+     *  entries that were not hashed since it was last read or written. */
+    void flush() {
+        if (!_dirty || !_indexFile.getParentFile().isDirectory()) {
+            return;
+        }
+        _entries.replaceAll((name, entry) ->
+            entry.hashed || entry.mtime < _writtenAt ? entry
+            : entry.smudged());
+        File tmp = new File(_indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Map<String, Entry> sorted = new TreeMap<>(_entries);
+            out.writeInt(sorted.size());
+            for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.inode);
+                out.write(Utils.shaToBytes(entry.sha));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _indexFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            _writtenAt = modified(_indexFile.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (Entry entry : _entries.values()) {
+            entry.hashed = false;
+        }
+        _dirty = false;
+    }
+
+    /** Read the entries of the index. */
+    private void load() {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(
+                     _indexFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            byte[] id = new byte[Utils.UID_BYTES];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                Entry entry = new Entry(in.readLong(), in.readLong(),
+                                        in.readLong());
+                in.readFully(id);
+                entry.sha = Utils.bytesToSha(id, 0);
+                _entries.put(name, entry);
+            }
+            _writtenAt = modified(_indexFile.toPath());
+        } catch (IOException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** Return the size, modification time and inode of the regular file
+     *  PATH, or null if it is not one. */
+    private static Entry stat(Path path) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            long inode = 0;
+            if (UNIX) {
+                Object ino = Files.getAttribute(path, "unix:ino");
+                inode = ((Number) ino).longValue();
+            }
+            return new Entry(attrs.size(), nanos(attrs.lastModifiedTime()),
+                             inode);
+        } catch (IOException | UnsupportedOperationException excp) {
+            return null;
+        }
+    }
+
+    /** Return the modification time of PATH in nanoseconds. */
+    private static long modified(Path path) throws IOException {
+        return nanos(Files.getLastModifiedTime(path));
+    }
+
+    /** Return TIME in nanoseconds since the epoch. */
+    private static long nanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    /** What the index records about one file. */
+    private static class Entry {
+        /** An entry for a file of SIZE bytes last modified at MTIME with
+         *  inode INODE. */
+        Entry(long size, long mtime, long inode) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+        }
+
+        /** Return a copy of this entry with size SMUDGED. */
+        Entry smudged() {
+            Entry result = new Entry(SMUDGED, mtime, inode);
+            result.sha = sha;
+            return result;
+        }
+
+        /** Return true iff OTHER has the same size, modification time and
+         *  inode as this entry. */
+        boolean matches(Entry other) {
+            return size == other.size && mtime == other.mtime
+                && inode == other.inode;
+        }
+
+        /** Size in bytes. */
+        private final long size;
+        /** Modification time in nanoseconds. */
+        private final long mtime;
+        /** Inode number, or 0 where unavailable. */
+        private final long inode;
+        /** SHA-1 id computed from the file when it had these attributes. */
+        private String sha;
+        /** True iff the file was hashed or written since the index was
+         *  last read or written. */
+        private boolean hashed;
+    }
+
+    /** True iff the default file system supports the unix attribute
+     *  view. */
+    private static final boolean UNIX = FileSystems.getDefault()
+        .supportedFileAttributeViews().contains("unix");
+
+    /** The caches opened so far, by working directory. */
+    private static final HashMap<File, StatCache> CACHES = new HashMap<>();
+
+    /** The working directory. */
+    private final File _workDir;
+    /** The file holding the index. */
+    private final File _indexFile;
+    /** Cached entries, by file name. */
+    private final ConcurrentHashMap<String, Entry> _entries;
+    /** Modification time of the index when last read or written, in
+     *  nanoseconds.  Entries at least this recent are racy. */
+    private long _writtenAt = Long.MIN_VALUE;
+    /** True iff entries changed since the index was read. */
+    private volatile boolean _dirty;
+    /** Number of threads used to hash files, or 0 if not yet determined. */
+    private static int _parallelism;
+}
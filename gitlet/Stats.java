@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Counters and timers of the work done by one command, reported on the
+ *  standard error when the command finishes if the --stats option is
+ *  given: as a summary with --stats or --stats=text, and as a JSON object
+ *  with --stats=json.
+ *
+ *  Code on hot paths calls count, or start and stop around a timed
+ *  operation.  While statistics are off, each of these only tests a
+ *  static flag, and start does not read the clock.  Counts are kept in
+ *  atomic arrays, so they may be updated from the threads that hash and
+ *  write files in parallel; the times of such operations are then summed
+ *  over threads and may exceed the command's elapsed time.  Times of
+ *  nested operations (such as hashing during status) are included in the
+ *  enclosing ones.
+ */
+class Stats {
+
+    /** The quantities counted. */
+    enum Counter {
+        /** Objects read from the object store. */
+        OBJECT_READS,
+        /** Bytes of objects read in full from the object store. */
+        OBJECT_BYTES_READ,
+        /** Objects added to the object store. */
+        OBJECT_WRITES,
+        /** Bytes of objects added to the object store, before encoding. */
+        OBJECT_BYTES_WRITTEN,
+        /** Objects stored as deltas. */
+        DELTAS_WRITTEN,
+        /** Reads of delta bases found in memory. */
+        DELTA_BASE_HITS,
+        /** Trees read from the object store. */
+        TREE_READS,
+        /** Reads of trees found in memory. */
+        TREE_CACHE_HITS,
+        /** Commits deserialized from their files. */
+        COMMITS_READ,
+        /** Lookups of commits found in the commit cache. */
+        COMMIT_CACHE_HITS,
+        /** Lookups of commits not found in the commit cache. */
+        COMMIT_CACHE_MISSES,
+        /** Working files hashed. */
+        FILES_HASHED,
+        /** Bytes of working files hashed. */
+        BYTES_HASHED,
+        /** Working files whose ids were taken from the stat cache. */
+        STAT_CACHE_HITS,
+        /** Working files written. */
+        FILES_WRITTEN,
+        /** Bytes of working files written. */
+        FILE_BYTES_WRITTEN,
+        /** Comparisons of two files made by Diff. */
+        DIFFS,
+        /** Lines compared by Diff. */
+        DIFF_LINES,
+    }
+
+    /** The operations timed. */
+    enum Timer {
+        /** The whole command. */
+        COMMAND,
+        /** Reading objects. */
+        OBJECT_READ,
+        /** Adding objects. */
+        OBJECT_WRITE,
+        /** Deserializing commits. */
+        COMMIT_READ,
+        /** Hashing working files. */
+        HASH,
+        /** Writing working files. */
+        FILE_WRITE,
+        /** Comparing files. */
+        DIFF,
+    }
+
+    /** Return the format in which statistics are reported, "text" or
+     *  "json", or null if they are not being kept. */
+    static String format() {
+        return _format;
+    }
+
+    /** Keep statistics and report them in FORMAT, "text" or "json", or
+     *  stop keeping them if FORMAT is null. */
+    static void setFormat(String format) {
+        _format = format;
+        _on = format != null;
+    }
+
+    /** Start counting, from zero, the work of COMMAND. */
+    static void begin(String command) {
+        if (_on) {
+            reset();
+            _command = command;
+            _start = System.nanoTime();
+        }
+    }
+
+    /** Finish counting the work of the command passed to begin, and print
+     *  its statistics to the standard error.  Does nothing if there is no
+     *  such command, so that a command ending early is reported once. */
+    static void end() {
+        if (_on && _command != null) {
+            stop(Timer.COMMAND, _start);
+            report(_command);
+            _command = null;
+        }
+    }
+
+    /** Set every count and time to zero. */
+    static void reset() {
+        for (int k = 0; k < COUNTS.length(); k += 1) {
+            COUNTS.set(k, 0);
+        }
+        for (int k = 0; k < TIMES.length(); k += 1) {
+            TIMES.set(k, 0);
+            TIMED.set(k, 0);
+        }
+    }
+
+    /** Add 1 to the counter C. */
+    static void count(Counter c) {
+        if (_on) {
+            COUNTS.incrementAndGet(c.ordinal());
+        }
+    }
+
+    /** Add N to the counter C. */
+    static void count(Counter c, long n) {
+        if (_on) {
+            COUNTS.addAndGet(c.ordinal(), n);
+        }
+    }
+
+    /** Return the start time of an operation to be passed to stop, or 0
+     *  if statistics are not being kept. */
+    static long start() {
+        return _on ? System.nanoTime() : 0;
+    }
+
+    /** Record an operation timed by T that started at START, as returned
+     *  by start. */
+    static void stop(Timer t, long start) {
+        if (_on) {
+            TIMES.addAndGet(t.ordinal(), System.nanoTime() - start);
+            TIMED.incrementAndGet(t.ordinal());
+        }
+    }
+
+    /** Return the value of counter C. */
+    static long get(Counter c) {
+        return COUNTS.get(c.ordinal());
+    }
+
+    /** Print the statistics of COMMAND to the standard error in the
+     *  requested format. */
+    private static void report(String command) {
+        PrintStream out = System.err;
+        if (_format.equals("json")) {
+            out.println(json(command));
+        } else {
+            out.printf("%s statistics:%n", command);
+            for (Timer t : Timer.values()) {
+                if (TIMED.get(t.ordinal()) > 0) {
+                    out.printf("  %-22s %8d  %10.3f ms%n", name(t),
+                               TIMED.get(t.ordinal()),
+                               TIMES.get(t.ordinal()) / 1e6);
+                }
+            }
+            for (Counter c : Counter.values()) {
+                if (get(c) > 0) {
+                    out.printf("  %-22s %8d%n", name(c), get(c));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /** Return the statistics of COMMAND as a JSON object holding the
+     *  command, every counter, and the number of times and total
+     *  milliseconds of every timed operation. */
+    static String json(String command) {
+        StringBuilder result = new StringBuilder();
+        result.append("{\"command\": \"")
+            .append(command.replace("\\", "\\\\").replace("\"", "\\\""))
+            .append("\", \"counters\": {");
+        String sep = "";
+        for (Counter c : Counter.values()) {
+            result.append(sep).append('"').append(name(c)).append("\": ")
+                .append(get(c));
+            sep = ", ";
+        }
+        result.append("}, \"timers\": {");
+        sep = "";
+        for (Timer t : Timer.values()) {
+            result.append(sep).append('"').append(name(t))
+                .append("\": {\"count\": ").append(TIMED.get(t.ordinal()))
+                .append(", \"ms\": ")
+                .append(String.format(Locale.ROOT, "%.3f",
+                                      TIMES.get(t.ordinal()) / 1e6))
+                .append('}');
+            sep = ", ";
+        }
+        return result.append("}}").toString();
+    }
+
+    /** Return the name under which E is reported. */
+    private static String name(Enum<?> e) {
+        return e.name().toLowerCase(Locale.ROOT);
+    }
+
+    /** True iff statistics are being kept. */
+    private static boolean _on;
+    /** Format of the report, or null. */
+    private static String _format;
+    /** The command being counted, or null. */
+    private static String _command;
+    /** Start time of _command. */
+    private static long _start;
+    /** Counts, by Counter ordinal. */
+    private static final AtomicLongArray COUNTS =
+        new AtomicLongArray(Counter.values().length);
+    /** Total nanoseconds, by Timer ordinal. */
+    private static final AtomicLongArray TIMES =
+        new AtomicLongArray(Timer.values().length);
+    /** Numbers of timed operations, by Timer ordinal. */
+    private static final AtomicLongArray TIMED =
+        new AtomicLongArray(Timer.values().length);
+}
@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** The writes that one command makes to the repository, ordered so that
+ *  a crash leaves the repository as it was before the command or as it
+ *  is after it.  Files that are rewritten are written to a temporary file
+ *  beside them that is then renamed over them, and files that grow only
+ *  have data appended to them; either way, they are recorded here.  The
+ *  branch refs and HEAD, which are what make new commits reachable, are
+ *  held in memory until the command finishes, when commit first makes the
+ *  other files durable and then renames the new refs into place.
+ *
+ *  How much is synced to disk depends on the durability mode.  In NONE,
+ *  nothing is, so a crash may lose recent commands or leave refs naming
+ *  commits that never reached the disk.  In BATCH, every file written by
+ *  the command is synced in one group when it finishes, before the refs
+ *  are written, and the refs in a second group.  In FULL, each file is
+ *  also synced as soon as it is written.  The mode is set by the
+ *  --durability option or taken from the system property
+ *  gitlet.durability or else the environment variable GITLET_DURABILITY,
+ *  and defaults to BATCH.
+ */
+class Transaction {
+
+    /** The durability modes. */
+    enum Mode {
+        /** Never sync. */
+        NONE,
+        /** Sync everything a command wrote when it finishes. */
+        BATCH,
+        /** Also sync each file as it is written. */
+        FULL;
+
+        /** Return the mode called NAME, ignoring case, or null if there is
+         *  none. */
+        static Mode named(String name) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Durability mode used when none is configured. */
+    static final Mode DEFAULT_MODE = Mode.BATCH;
+
+    /** Return the durability mode. */
+    static synchronized Mode mode() {
+        if (_mode == null) {
+            String value = System.getProperty("gitlet.durability",
+                                              System.getenv(
+                                                  "GITLET_DURABILITY"));
+            _mode = value == null ? null : Mode.named(value);
+            if (_mode == null) {
+                _mode = DEFAULT_MODE;
+            }
+        }
+        return _mode;
+    }
+
+    /** Set the durability mode to MODE. */
+    static synchronized void setMode(Mode mode) {
+        _mode = mode;
+    }
+
+    /** Return the temporary file to which the new contents of FILE are
+     *  written before being installed. */
+    static File temp(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /** Rename TMP, which holds the new contents of FILE, over FILE. */
+    static synchronized void install(File tmp, File file) {
+        if (mode() == Mode.FULL) {
+            sync(tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (mode() == Mode.FULL) {
+            sync(file.getParentFile());
+        } else {
+            WRITTEN.add(file);
+        }
+    }
+
+    /** Record that data was appended to FILE, which may be new. */
+    static synchronized void written(File file) {
+        if (mode() == Mode.FULL) {
+            sync(file);
+            sync(file.getParentFile());
+        } else {
+            WRITTEN.add(file);
+        }
+    }
+
+    /** Set the ref or HEAD file REF to hold CONTENTS when the command
+     *  finishes. */
+    static synchronized void writeRef(File ref, String contents) {
+        REFS.put(ref, contents);
+    }
+
+    /** Delete the ref REF when the command finishes. */
+    static synchronized void deleteRef(File ref) {
+        REFS.put(ref, null);
+    }
+
+    /** Return the contents of the ref or HEAD file REF, as this command
+     *  has left them. */
+    static synchronized String readRef(File ref) {
+        if (REFS.containsKey(ref)) {
+            String contents = REFS.get(ref);
+            if (contents == null) {
+                throw new IllegalArgumentException("no ref " + ref.getName());
+            }
+            return contents;
+        }
+        return Utils.readContentsAsString(ref);
+    }
+
+    /** Return true iff the ref REF exists, as this command has left it. */
+    static synchronized boolean refExists(File ref) {
+        if (REFS.containsKey(ref)) {
+            return REFS.get(ref) != null;
+        }
+        return ref.exists();
+    }
+
+    /** Finish the command: make the files it wrote durable, as far as the
+     *  mode requires, and then install its refs. */
+    static synchronized void commit() {
+        boolean syncing = mode() != Mode.NONE;
+        if (syncing) {
+            syncAll(WRITTEN);
+        }
+        WRITTEN.clear();
+        Set<File> refs = new LinkedHashSet<>();
+        for (Map.Entry<File, String> e : REFS.entrySet()) {
+            if (e.getValue() != null) {
+                File tmp = temp(e.getKey());
+                Utils.writeContents(tmp, e.getValue());
+                refs.add(tmp);
+            }
+        }
+        if (syncing) {
+            syncAll(refs);
+        }
+        for (Map.Entry<File, String> e : REFS.entrySet()) {
+            File ref = e.getKey();
+            if (e.getValue() == null) {
+                ref.delete();
+            } else {
+                try {
+                    Files.move(temp(ref).toPath(), ref.toPath(),
+                               StandardCopyOption.REPLACE_EXISTING,
+                               StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        if (syncing) {
+            Set<File> dirs = new LinkedHashSet<>();
+            for (File ref : REFS.keySet()) {
+                dirs.add(ref.getParentFile());
+            }
+            for (File dir : dirs) {
+                sync(dir);
+            }
+        }
+        REFS.clear();
+    }
+
+    /** Abandon the command: forget the files it wrote and drop the refs
+     *  it would have written. */
+    static synchronized void abort() {
+        WRITTEN.clear();
+        REFS.clear();
+    }
+
+    /** Sync each of FILES and then each of their directories. */
+    private static void syncAll(Set<File> files) {
+        Set<File> dirs = new LinkedHashSet<>();
+        for (File file : files) {
+            sync(file);
+            dirs.add(file.getParentFile());
+        }
+        for (File dir : dirs) {
+            sync(dir);
+        }
+    }
+
+    /** Force the contents of FILE, which may be a directory, to disk,
+     *  unless it has since been removed.  Systems that cannot sync
+     *  directories are tolerated. */
+    private static void sync(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        boolean dir = file.isDirectory();
+        try (FileChannel channel = FileChannel.open(
+                 file.toPath(), dir ? StandardOpenOption.READ
+                                    : StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!dir) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** The durability mode, or null if not yet configured. */
+    private static Mode _mode;
+    /** Files written by this command that have not been synced. */
+    private static final Set<File> WRITTEN = new LinkedHashSet<>();
+    /** New contents of the refs written by this command, by file, with
+     *  null for deleted refs, in the order they were first written. */
+    private static final Map<File, String> REFS = new LinkedHashMap<>();
+}
@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The contents of one directory of a commit: the names of its files and
+ *  subdirectories with the ids of their blobs and trees.  Trees are
+ *  content-addressed objects in the object store, so a directory that
+ *  did not change between two commits is the same tree in both, and a
+ *  commit writes new trees only for the directories on the paths it
+ *  changes.
+ *
+ *  Paths are relative to the working directory with components separated
+ *  by '/'.  A stored tree is a magic number, the number of entries and,
+ *  for each entry in name order, its kind (FILE or DIR), name and binary
+ *  id; its id is the SHA-1 of that form.
+ */
+class Tree {
+
+    /** Magic number at the start of every stored tree ("GTRE"). */
+    static final int MAGIC = 0x47545245;
+    /** Kind of an entry naming a blob. */
+    static final byte FILE = 0;
+    /** Kind of an entry naming a subtree. */
+    static final byte DIR = 1;
+    /** Number of trees kept in memory after being read. */
+    static final int CACHE_SIZE = 256;
+
+    /** An empty tree. */
+    Tree() {
+        _entries = new TreeMap<>();
+    }
+
+    /** Return the id of the entry NAME, or null if there is none. */
+    String sha(String name) {
+        Entry entry = _entries.get(name);
+        return entry == null ? null : entry.sha;
+    }
+
+    /** Return the kind of the entry NAME, which must exist. */
+    byte kind(String name) {
+        return _entries.get(name).kind;
+    }
+
+    /** Return the tree with id SHA from STORE. */
+    static Tree read(ObjectStore store, String sha) {
+        Tree tree;
+        synchronized (CACHE) {
+            tree = CACHE.get(sha);
+        }
+        if (tree != null) {
+            Stats.count(Stats.Counter.TREE_CACHE_HITS);
+            return tree;
+        }
+        Stats.count(Stats.Counter.TREE_READS);
+        tree = new Tree();
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(store.read(sha)))) {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("object %s is not a tree", sha);
+            }
+            byte[] id = new byte[Utils.UID_BYTES];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                byte kind = in.readByte();
+                String name = in.readUTF();
+                in.readFully(id);
+                tree._entries.put(name,
+                                  new Entry(kind, Utils.bytesToSha(id, 0)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        synchronized (CACHE) {
+            CACHE.put(sha, tree);
+        }
+        return tree;
+    }
+
+    /** Store this tree in STORE and return its id. */
+    String write(ObjectStore store) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeByte(e.getValue().kind);
+                out.writeUTF(e.getKey());
+                out.write(Utils.shaToBytes(e.getValue().sha));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] data = bytes.toByteArray();
+        String sha = Utils.sha1(data);
+        store.put(sha, data);
+        synchronized (CACHE) {
+            CACHE.put(sha, this);
+        }
+        return sha;
+    }
+
+    /** Return the id of the blob at PATH under the tree with id ROOT in
+     *  STORE, or null if there is none. */
+    static String lookup(ObjectStore store, String root, String path) {
+        String sha = root;
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', start)) {
+            Tree tree = read(store, sha);
+            String name = path.substring(start, slash);
+            sha = tree.sha(name);
+            if (sha == null || tree.kind(name) != DIR) {
+                return null;
+            }
+            start = slash + 1;
+        }
+        Tree tree = read(store, sha);
+        String name = path.substring(start);
+        sha = tree.sha(name);
+        return sha == null || tree.kind(name) != FILE ? null : sha;
+    }
+
+    /** Add the path and blob id of every file under the tree with id ROOT
+     *  in STORE to FILES, each path prefixed by PREFIX. */
+    static void flatten(ObjectStore store, String root, String prefix,
+                        Map<String, String> files) {
+        for (Map.Entry<String, Entry> e
+                 : read(store, root)._entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry.kind == DIR) {
+                flatten(store, entry.sha, prefix + e.getKey() + "/", files);
+            } else {
+                files.put(prefix + e.getKey(), entry.sha);
+            }
+        }
+    }
+
+    /** Add the ids of the tree ROOT in STORE and of every subtree and
+     *  blob under it to MARKED, which may be shared by several threads.
+     *  Subtrees already in MARKED are not read again. */
+    static void mark(ObjectStore store, String root, Set<String> marked) {
+        if (!marked.add(root)) {
+            return;
+        }
+        for (Entry entry : read(store, root)._entries.values()) {
+            if (entry.kind == DIR) {
+                mark(store, entry.sha, marked);
+            } else {
+                marked.add(entry.sha);
+            }
+        }
+    }
+
+    /** Add to CHANGES each path, prefixed by PREFIX, whose blob differs
+     *  between the trees with ids FROM and TO in STORE, mapped to the pair
+     *  {id in FROM, id in TO}, where null stands for no file.  Either tree
+     *  may be null, standing for an empty one.  Subtrees with the same id
+     *  in both are skipped without being read. */
+    static void diff(ObjectStore store, String from, String to,
+                     String prefix, Map<String, String[]> changes) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree a = from == null ? new Tree() : read(store, from);
+        Tree b = to == null ? new Tree() : read(store, to);
+        TreeSet<String> names = new TreeSet<>(a._entries.keySet());
+        names.addAll(b._entries.keySet());
+        for (String name : names) {
+            Entry x = a._entries.get(name), y = b._entries.get(name);
+            if (x != null && y != null && x.kind == y.kind
+                && x.sha.equals(y.sha)) {
+                continue;
+            }
+            String xDir = x != null && x.kind == DIR ? x.sha : null;
+            String yDir = y != null && y.kind == DIR ? y.sha : null;
+            if (xDir != null || yDir != null) {
+                diff(store, xDir, yDir, prefix + name + "/", changes);
+            }
+            String xFile = x != null && x.kind == FILE ? x.sha : null;
+            String yFile = y != null && y.kind == FILE ? y.sha : null;
+            if (xFile != null || yFile != null) {
+                changes.put(prefix + name, new String[] { xFile, yFile });
+            }
+        }
+    }
+
+    /** Return the id of the tree that results from applying CHANGES, a
+     *  map from paths to new blob ids (or to null for removed files), to
+     *  the tree with id ROOT in STORE, or to an empty tree if ROOT is
+     *  null.  Only trees on the changed paths are rewritten; directories
+     *  left empty are removed, leaving any file that takes their place.
+     *  CHANGES is emptied in the process.  Every path must be canonical,
+     *  as checked by Utils.isWorkingPath. */
+    static String update(ObjectStore store, String root,
+                         SortedMap<String, String> changes) {
+        Tree tree = root == null ? new Tree() : read(store, root).copy();
+        while (!changes.isEmpty()) {
+            String path = changes.firstKey();
+            if (!Utils.isWorkingPath(path)) {
+                throw Utils.error("invalid path in tree: %s", path);
+            }
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                String sha = changes.remove(path);
+                if (sha == null) {
+                    tree._entries.remove(path);
+                } else {
+                    tree._entries.put(path, new Entry(FILE, sha));
+                }
+                continue;
+            }
+            String name = path.substring(0, slash);
+            SortedMap<String, String> inDir =
+                changes.subMap(name + '/', name + (char) ('/' + 1));
+            TreeMap<String, String> sub = new TreeMap<>();
+            for (Map.Entry<String, String> e : inDir.entrySet()) {
+                sub.put(e.getKey().substring(slash + 1), e.getValue());
+            }
+            inDir.clear();
+            String old = tree.sha(name);
+            if (old != null && tree.kind(name) != DIR) {
+                old = null;
+            }
+            String subSha = update(store, old, sub);
+            if (!read(store, subSha)._entries.isEmpty()) {
+                tree._entries.put(name, new Entry(DIR, subSha));
+            } else if (old != null) {
+                tree._entries.remove(name);
+            }
+        }
+        return tree.write(store);
+    }
+
+    /** Return a tree with the same entries as this one. */
+    private Tree copy() {
+        Tree result = new Tree();
+        result._entries.putAll(_entries);
+        return result;
+    }
+
+    /** One entry of a tree. */
+    private static class Entry {
+        /** An entry of kind KIND with id SHA. */
+        Entry(byte kind, String sha) {
+            this.kind = kind;
+            this.sha = sha;
+        }
+
+        /** FILE or DIR. */
+        private final byte kind;
+        /** Id of the blob or subtree. */
+        private final String sha;
+    }
+
+    /** Recently read or written trees, by id.  Locked while used, since
+     *  trees may be read from several threads. */
+    private static final Map<String, Tree> CACHE =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tree> e) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /** The entries, by name. */
+    private final TreeMap<String, Entry> _entries;
+}
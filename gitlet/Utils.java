@@ -11,12 +11,19 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 
@@ -61,6 +68,87 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE followed by SUFFIX,
+     *  the same value as sha1(readContents(FILE), SUFFIX), without holding
+     *  the contents in memory.  Files of at least MAP_THRESHOLD bytes are
+     *  digested through memory-mapped windows; smaller ones are read
+     *  through a reusable per-thread direct buffer.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(File file, String suffix) {
+        long start = Stats.start();
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long size = in.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                    md.update(in.map(FileChannel.MapMode.READ_ONLY, pos,
+                                     Math.min(MAP_WINDOW, size - pos)));
+                }
+            } else {
+                ByteBuffer buf = HASH_BUFFER.get();
+                buf.clear();
+                while (in.read(buf) > 0) {
+                    buf.flip();
+                    md.update(buf);
+                    buf.clear();
+                }
+            }
+            md.update(suffix.getBytes(StandardCharsets.UTF_8));
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            Stats.count(Stats.Counter.FILES_HASHED);
+            Stats.count(Stats.Counter.BYTES_HASHED, size);
+            Stats.stop(Stats.Timer.HASH, start);
+            return result.toString();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Size from which sha1(File, String) maps files rather than reading
+     *  them. */
+    static final long MAP_THRESHOLD = 1L << 20;
+
+    /** Size of the windows through which sha1(File, String) maps files. */
+    static final long MAP_WINDOW = 64L << 20;
+
+    /** Per-thread buffer through which sha1(File, String) reads files. */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 16));
+
+    /** The length of a complete SHA-1 UID in bytes. */
+    static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Returns the UID_BYTES-byte binary form of the hexadecimal SHA-1
+     *  UID SHA. */
+    static byte[] shaToBytes(String sha) {
+        if (sha.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("malformed SHA-1 id: " + sha);
+        }
+        byte[] result = new byte[UID_BYTES];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(sha.substring(2 * i,
+                                                              2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal SHA-1 UID whose binary form occupies the
+     *  UID_BYTES bytes of BYTES starting at OFFSET. */
+    static String bytesToSha(byte[] bytes, int offset) {
+        StringBuilder result = new StringBuilder(UID_LENGTH);
+        for (int i = offset; i < offset + UID_BYTES; i += 1) {
+            result.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            result.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return result.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -86,6 +174,31 @@ class Utils {
         return restrictedDelete(new File(file));
     }
 
+    /** Deletes the file at PATH, a '/'-separated path relative to the
+     *  working directory WORKDIR, if it exists and is not a directory, and
+     *  then removes the directories between it and WORKDIR that this
+     *  leaves empty.  Returns true if the file was deleted, and false
+     *  otherwise.  Refuses to delete anything and throws
+     *  IllegalArgumentException unless WORKDIR contains a directory named
+     *  .gitlet. */
+    static boolean restrictedDelete(File workDir, String path) {
+        if (!(new File(workDir, ".gitlet")).isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        File file = join(workDir, path);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        for (File dir = file.getParentFile(); !dir.equals(workDir);
+             dir = dir.getParentFile()) {
+            String[] rest = dir.list();
+            if (rest == null || rest.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
+        return true;
+    }
+
     /* READING AND WRITING FILE CONTENTS */
 
     /** Return the entire contents of FILE as a byte array.  FILE must
@@ -186,6 +299,73 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns the '/'-separated paths, relative to WORKDIR, of all plain
+     *  files in WORKDIR and its subdirectories other than .gitlet, in
+     *  lexicographic order as Java Strings. */
+    static List<String> workingFilesIn(File workDir) {
+        ArrayList<String> result = new ArrayList<>();
+        addWorkingFiles(workDir, "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return PATH, a file name as given on the command line, as the
+     *  canonical '/'-separated path relative to the working directory
+     *  WORKDIR under which it is tracked, so that "./f", "d/../f" and an
+     *  absolute name of WORKDIR/f all denote "f".  Returns null if PATH
+     *  names WORKDIR itself, something outside it, or something in a
+     *  .gitlet directory. */
+    static String workingPath(File workDir, String path) {
+        Path dir = workDir.toPath().toAbsolutePath().normalize();
+        Path full;
+        try {
+            full = dir.resolve(path).normalize();
+        } catch (InvalidPathException excp) {
+            return null;
+        }
+        if (!full.startsWith(dir) || full.equals(dir)) {
+            return null;
+        }
+        Path relative = dir.relativize(full);
+        ArrayList<String> names = new ArrayList<>();
+        for (Path name : relative) {
+            names.add(name.toString());
+        }
+        String result = String.join("/", names);
+        return isWorkingPath(result) ? result : null;
+    }
+
+    /** Return true iff PATH is a canonical '/'-separated path of a file
+     *  in a working directory: one with no empty, ".", ".." or .gitlet
+     *  components. */
+    static boolean isWorkingPath(String path) {
+        for (String name : path.split("/", -1)) {
+            if (name.isEmpty() || name.equals(".") || name.equals("..")
+                || name.equals(".gitlet")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Add the paths of the plain files under DIR to RESULT, each
+     *  prefixed by PREFIX, skipping any .gitlet directory. */
+    private static void addWorkingFiles(File dir, String prefix,
+                                        List<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile()) {
+                result.add(prefix + file.getName());
+            } else if (file.isDirectory()
+                       && !file.getName().equals(".gitlet")) {
+                addWorkingFiles(file, prefix + file.getName() + "/", result);
+            }
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
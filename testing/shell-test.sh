@@ -0,0 +1,114 @@
+#!/bin/bash
+# Check that "gitlet shell" runs the commands read from its standard
+# input, goes on after commands that end with an error message, and reads
+# the repository again when another process changes it between commands.
+# gitlet.Main must be on the CLASSPATH.
+
+GITLET="java -ea gitlet.Main"
+SRC=$(cd "$(dirname "$0")/src" && pwd)
+
+dir=$(mktemp -d)
+trap 'rm -rf "$dir"' EXIT
+mkdir "$dir/repo" && cd "$dir/repo" || exit 1
+
+fail() {
+    echo "shell-test: $1"
+    echo "--- shell output:"
+    cat ../out
+    exit 1
+}
+
+# Wait until the shell's output contains N lines matching PATTERN.
+wait_for() {
+    for ((i = 0; i < 600; i += 1)); do
+        if [ "$(grep -c -e "$2" ../out)" -ge "$1" ]; then
+            return
+        fi
+        if ! kill -0 "$shell" 2>/dev/null; then
+            fail "shell exited early"
+        fi
+        sleep 0.1
+    done
+    fail "timed out waiting for \"$2\""
+}
+
+$GITLET init || exit 1
+cp "$SRC/wug.txt" wug.txt
+mkfifo ../in
+$GITLET shell < ../in > ../out 2>&1 &
+shell=$!
+exec 3> ../in
+
+cat >&3 <<'EOF'
+add wug.txt
+add missing.txt
+commit "wug"
+commit ""
+checkout nosuchbranch
+status
+EOF
+wait_for 1 "^=== Untracked Files ===$"
+
+# Another process commits and branches while the shell is waiting.
+cp "$SRC/notwug.txt" wug.txt
+$GITLET add wug.txt || exit 1
+$GITLET commit "outside" || exit 1
+$GITLET branch other || exit 1
+
+cat >&3 <<'EOF'
+status
+find outside
+log
+exit
+EOF
+exec 3>&-
+wait "$shell" || fail "shell exited with status $?"
+
+sed -e 's/^commit [0-9a-f]*$/commit ID/' -e 's/^Date: .*$/Date: DATE/' \
+    -e 's/^[0-9a-f]\{40\}$/ID/' ../out > ../actual
+cat > ../expected <<'EOF'
+File does not exist.
+Please enter a commit message.
+No such branch exists.
+=== Branches ===
+*master
+
+=== Staged Files ===
+
+=== Removed Files ===
+
+=== Modifications Not Staged For Commit ===
+
+=== Untracked Files ===
+
+=== Branches ===
+*master
+other
+
+=== Staged Files ===
+
+=== Removed Files ===
+
+=== Modifications Not Staged For Commit ===
+
+=== Untracked Files ===
+
+ID
+===
+commit ID
+Date: DATE
+outside
+
+===
+commit ID
+Date: DATE
+wug
+
+===
+commit ID
+Date: DATE
+initial commit
+
+EOF
+diff ../expected ../actual > /dev/null || fail "unexpected output"
+echo "shell-test: OK"